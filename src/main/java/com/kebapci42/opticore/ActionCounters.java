@@ -0,0 +1,51 @@
+package com.kebapci42.opticore;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Lifetime counts of everything the optimizer does, for the metrics exporter.
+// Incremented from the main thread, read from any thread.
+final class ActionCounters {
+    enum Action {
+        ITEMS_MERGED("items_merged", "Items moved into a neighbouring stack"),
+        ITEM_ENTITIES_SAVED("item_entities_saved", "Item entities removed by merging"),
+        CHUNKS_UNLOADED("chunks_unloaded", "Cold chunks unloaded"),
+        EMERGENCY_ACTIVATIONS("emergency_activations", "Emergency optimization passes"),
+        MEMORY_SHEDS("memory_sheds", "Load shedding passes triggered by memory pressure"),
+        VIEW_DISTANCE_STEPS("view_distance_steps", "Per-world view distance changes"),
+        FORCED_OPTIMIZATIONS("forced_optimizations", "Optimization passes forced by command"),
+        SPAWNS_DENIED("spawns_denied", "Spawns cancelled by the spawn rate limiter"),
+        PREDICTIVE_OPTIMIZATIONS("predictive_optimizations", "Gentle passes run ahead of a predicted tick overrun"),
+        JOIN_RAMPS("join_ramps", "Players joining in a burst given a ramped view distance"),
+        LOGINS_DEFERRED("logins_deferred", "Logins turned away during a join burst over the tick budget");
+
+        final String metricName;
+        final String help;
+
+        Action(String metricName, String help) {
+            this.metricName = metricName;
+            this.help = help;
+        }
+    }
+
+    private static final Action[] ACTIONS = Action.values();
+
+    private final LongAdder[] counts = new LongAdder[ACTIONS.length];
+
+    ActionCounters() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    void increment(Action action) {
+        counts[action.ordinal()].increment();
+    }
+
+    void add(Action action, long amount) {
+        counts[action.ordinal()].add(amount);
+    }
+
+    long get(Action action) {
+        return counts[action.ordinal()].sum();
+    }
+}
@@ -0,0 +1,195 @@
+package com.kebapci42.opticore;
+
+import org.bukkit.ChatColor;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Learns which optimization actions actually recover tick time on this server.
+//
+// Every action taken is recorded with the mean MSPT of the window before it; after a
+// settling delay the mean MSPT of an equally long window is taken again and the drop
+// is credited to the action. Actions still waiting for their result when another one
+// starts share the credit, since the drop cannot be told apart. The after window
+// includes whatever main-thread time the action itself costs (culling sweeps, chunk
+// saves), so the credit is net of cost. Per action the credit is kept as a decaying
+// mean so estimates follow workload changes.
+//
+// AdaptiveOptimizer chooses among the measures a situation allows with UCB1: the
+// learned mean plus an exploration bonus that shrinks as an action is tried, so
+// rarely used actions are still re-measured now and then. Scores are saved to
+// action-scores.yml. Main thread, except appendReport, which synchronizes.
+class ActionFeedback {
+    enum Action {
+        GENTLE_CULL("gentle culling"),
+        MODERATE_CULL("moderate culling"),
+        AGGRESSIVE_CULL("aggressive culling + mob AI"),
+        CHUNK_UNLOAD("cold chunk unload"),
+        VIEW_DISTANCE("view distance step down");
+
+        final String label;
+
+        Action(String label) {
+            this.label = label;
+        }
+    }
+
+    private static final Action[] ACTIONS = Action.values();
+    private static final int HISTORY_SECONDS = 128;
+    // Decaying mean: after this many trials new results keep a fixed weight
+    private static final int MEMORY = 50;
+
+    private final OptiCore plugin;
+    private final File stateFile;
+    private final double[] msptHistory = new double[HISTORY_SECONDS];
+    private final List<Pending> pending = new ArrayList<>();
+    private final long[] trials = new long[ACTIONS.length];
+    private final double[] meanBenefit = new double[ACTIONS.length];
+    private final double[] lastBenefit = new double[ACTIONS.length];
+    private long seconds;
+    private boolean dirty;
+
+    private static final class Pending {
+        final Action action;
+        final double before;
+        final long due;
+        int shares = 1;
+
+        Pending(Action action, double before, long due) {
+            this.action = action;
+            this.before = before;
+            this.due = due;
+        }
+    }
+
+    ActionFeedback(OptiCore plugin) {
+        this.plugin = plugin;
+        this.stateFile = new File(plugin.getDataFolder(), "action-scores.yml");
+    }
+
+    void load() {
+        if (!stateFile.exists()) return;
+        YamlConfiguration state = YamlConfiguration.loadConfiguration(stateFile);
+        for (Action action : ACTIONS) {
+            String path = "actions." + action.name().toLowerCase() + ".";
+            trials[action.ordinal()] = Math.max(0, state.getLong(path + "trials", 0));
+            meanBenefit[action.ordinal()] = state.getDouble(path + "mean-benefit-ms", 0);
+        }
+    }
+
+    void save() {
+        if (!dirty) return;
+        YamlConfiguration state = YamlConfiguration.loadConfiguration(stateFile);
+        synchronized (this) {
+            for (Action action : ACTIONS) {
+                String path = "actions." + action.name().toLowerCase() + ".";
+                state.set(path + "trials", trials[action.ordinal()]);
+                state.set(path + "mean-benefit-ms", meanBenefit[action.ordinal()]);
+            }
+        }
+        try {
+            state.save(stateFile);
+            dirty = false;
+        } catch (IOException e) {
+            plugin.getLogger().warning("Could not save action scores - " + e.getMessage());
+        }
+    }
+
+    // Once a second with the mean MSPT of that second
+    void observe(double mspt) {
+        msptHistory[(int) (seconds++ % HISTORY_SECONDS)] = mspt;
+        for (int i = pending.size() - 1; i >= 0; i--) {
+            Pending p = pending.get(i);
+            if (seconds < p.due) continue;
+            pending.remove(i);
+            credit(p.action, (p.before - recentMean()) / p.shares);
+        }
+        if (dirty && seconds % 300 == 0) {
+            save();
+        }
+    }
+
+    void record(Action action) {
+        plugin.getFlightRecording().action(action);
+        Settings settings = plugin.getSettings();
+        if (seconds < settings.feedbackWindowSeconds) return; // No baseline yet
+        for (Pending p : pending) {
+            if (p.action == action) return; // Still measuring the last one
+        }
+        Pending p = new Pending(action, recentMean(),
+            seconds + settings.feedbackDelaySeconds + settings.feedbackWindowSeconds);
+        for (Pending other : pending) {
+            other.shares++;
+            p.shares++;
+        }
+        pending.add(p);
+    }
+
+    // UCB1 over the allowed actions; untried ones come first
+    Action choose(List<Action> allowed) {
+        long total = 1;
+        for (Action action : allowed) {
+            total += trials[action.ordinal()];
+        }
+        double exploration = plugin.getSettings().feedbackExploration;
+        Action best = null;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (Action action : allowed) {
+            double score = score(action, total, exploration);
+            if (score > bestScore) {
+                best = action;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    private double score(Action action, long total, double exploration) {
+        long n = trials[action.ordinal()];
+        if (n == 0) return Double.POSITIVE_INFINITY;
+        return meanBenefit[action.ordinal()] + exploration * Math.sqrt(Math.log(total) / n);
+    }
+
+    private synchronized void credit(Action action, double benefit) {
+        int i = action.ordinal();
+        trials[i]++;
+        meanBenefit[i] += (benefit - meanBenefit[i]) / Math.min(trials[i], MEMORY);
+        lastBenefit[i] = benefit;
+        dirty = true;
+    }
+
+    private double recentMean() {
+        int window = (int) Math.min(seconds, plugin.getSettings().feedbackWindowSeconds);
+        if (window == 0) return 0;
+        double sum = 0;
+        for (long s = seconds - window; s < seconds; s++) {
+            sum += msptHistory[(int) (s % HISTORY_SECONDS)];
+        }
+        return sum / window;
+    }
+
+    synchronized void appendReport(StringBuilder report) {
+        report.append(ChatColor.AQUA).append("Learned action impact (MSPT recovered per use):\n");
+        long total = 1;
+        for (long n : trials) {
+            total += n;
+        }
+        double exploration = plugin.getSettings().feedbackExploration;
+        for (Action action : ACTIONS) {
+            int i = action.ordinal();
+            report.append(ChatColor.WHITE).append("  ").append(action.label).append(": ");
+            if (trials[i] == 0) {
+                report.append(ChatColor.GRAY).append("not measured yet\n");
+                continue;
+            }
+            report.append(meanBenefit[i] > 0 ? ChatColor.GREEN : ChatColor.RED)
+                .append(String.format("%+.2fms", meanBenefit[i]))
+                .append(ChatColor.GRAY).append(String.format(" over %d uses, last %+.2fms, score %.2f",
+                    trials[i], lastBenefit[i], score(action, total, exploration)))
+                .append('\n');
+        }
+    }
+}
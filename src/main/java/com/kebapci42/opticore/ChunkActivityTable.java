@@ -0,0 +1,254 @@
+package com.kebapci42.opticore;
+
+import org.bukkit.World;
+
+import java.util.Arrays;
+
+// Per-world activity records for loaded chunks, stored as parallel primitive arrays
+// in an open-addressing table keyed by packed chunk coordinates (see util.ChunkKey).
+// A slot costs 8 (key) + 8 (score) + 4 (load time) + 4 (players) + 4 (heap index)
+// + 4 (heap entry) + 1 (used) bytes; no per-chunk objects and no Chunk references.
+//
+// The table also maintains a binary min-heap of its slots ordered by (score, load
+// time), which ChunkOptimizer uses to find the coldest chunks. Records move when
+// deletions shift entries back, so the heap and heapIndex are kept in sync on every
+// move. Main thread only.
+final class ChunkActivityTable {
+    private static final float LOAD_FACTOR = 0.6f;
+
+    final World world;
+    private long[] keys;
+    private double[] scores;
+    private int[] loadTimes;
+    private int[] players;
+    private int[] heapIndex;
+    private boolean[] used;
+    private int[] heap;
+    private int heapSize;
+    private int mask;
+    private int size;
+    private int resizeAt;
+
+    ChunkActivityTable(World world, int expectedChunks) {
+        this.world = world;
+        int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedChunks / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    int size() {
+        return size;
+    }
+
+    int find(long key) {
+        int slot = mix(key) & mask;
+        while (used[slot]) {
+            if (keys[slot] == key) return slot;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    // Adds a record (if absent) with no activity and queues it in the heap
+    void insert(long key, int loadTime) {
+        if (find(key) >= 0) return;
+        if (size + 1 >= resizeAt) {
+            rehash(keys.length << 1);
+        }
+        int slot = mix(key) & mask;
+        while (used[slot]) {
+            slot = (slot + 1) & mask;
+        }
+        used[slot] = true;
+        keys[slot] = key;
+        scores[slot] = Double.NEGATIVE_INFINITY;
+        loadTimes[slot] = loadTime;
+        players[slot] = 0;
+        heapIndex[slot] = -1;
+        size++;
+        heapOffer(slot);
+    }
+
+    void remove(long key) {
+        int slot = find(key);
+        if (slot < 0) return;
+        if (heapIndex[slot] >= 0) {
+            heapRemove(heapIndex[slot]);
+        }
+        size--;
+        shiftBack(slot);
+    }
+
+    long keyAt(int slot) {
+        return keys[slot];
+    }
+
+    double scoreAt(int slot) {
+        return scores[slot];
+    }
+
+    int loadTimeAt(int slot) {
+        return loadTimes[slot];
+    }
+
+    void setLoadTime(int slot, int loadTime) {
+        loadTimes[slot] = loadTime;
+        if (heapIndex[slot] >= 0) {
+            siftDown(heapIndex[slot]);
+            siftUp(heapIndex[slot]);
+        }
+    }
+
+    int playersAt(int slot) {
+        return players[slot];
+    }
+
+    void addPlayers(int slot, int delta) {
+        players[slot] = Math.max(0, players[slot] + delta);
+    }
+
+    // Scores only ever increase through activity, so the slot can only sink in the heap
+    void raiseScore(int slot, double score) {
+        scores[slot] = score;
+        if (heapIndex[slot] >= 0) {
+            siftDown(heapIndex[slot]);
+        }
+    }
+
+    // Coldest queued slot, or -1
+    int heapPeek() {
+        return heapSize == 0 ? -1 : heap[0];
+    }
+
+    int heapPoll() {
+        if (heapSize == 0) return -1;
+        int slot = heap[0];
+        heapRemove(0);
+        return slot;
+    }
+
+    void heapOffer(int slot) {
+        if (heapIndex[slot] >= 0) return;
+        heap[heapSize] = slot;
+        heapIndex[slot] = heapSize++;
+        siftUp(heapSize - 1);
+    }
+
+    private boolean colder(int a, int b) {
+        if (scores[a] != scores[b]) return scores[a] < scores[b];
+        return loadTimes[a] < loadTimes[b];
+    }
+
+    private void heapRemove(int index) {
+        heapIndex[heap[index]] = -1;
+        int last = heap[--heapSize];
+        if (index < heapSize) {
+            heap[index] = last;
+            heapIndex[last] = index;
+            siftDown(index);
+            siftUp(heapIndex[last]);
+        }
+    }
+
+    private void siftUp(int index) {
+        int slot = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!colder(slot, heap[parent])) break;
+            heap[index] = heap[parent];
+            heapIndex[heap[index]] = index;
+            index = parent;
+        }
+        heap[index] = slot;
+        heapIndex[slot] = index;
+    }
+
+    private void siftDown(int index) {
+        int slot = heap[index];
+        int half = heapSize >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if (right < heapSize && colder(heap[right], heap[child])) {
+                child = right;
+            }
+            if (!colder(heap[child], slot)) break;
+            heap[index] = heap[child];
+            heapIndex[heap[index]] = index;
+            index = child;
+        }
+        heap[index] = slot;
+        heapIndex[slot] = index;
+    }
+
+    private void shiftBack(int slot) {
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (used[next]) {
+            int home = mix(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                move(next, gap);
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        used[gap] = false;
+        heapIndex[gap] = -1;
+    }
+
+    private void move(int from, int to) {
+        keys[to] = keys[from];
+        scores[to] = scores[from];
+        loadTimes[to] = loadTimes[from];
+        players[to] = players[from];
+        heapIndex[to] = heapIndex[from];
+        used[to] = true;
+        if (heapIndex[to] >= 0) {
+            heap[heapIndex[to]] = to;
+        }
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        double[] oldScores = scores;
+        int[] oldLoadTimes = loadTimes;
+        int[] oldPlayers = players;
+        boolean[] oldUsed = used;
+        int[] oldHeapIndex = heapIndex;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (!oldUsed[i]) continue;
+            int slot = mix(oldKeys[i]) & mask;
+            while (used[slot]) {
+                slot = (slot + 1) & mask;
+            }
+            used[slot] = true;
+            keys[slot] = oldKeys[i];
+            scores[slot] = oldScores[i];
+            loadTimes[slot] = oldLoadTimes[i];
+            players[slot] = oldPlayers[i];
+            // Chunks waiting in the unload queue are out of the heap and must stay out
+            if (oldHeapIndex[i] >= 0) {
+                heapOffer(slot);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        scores = new double[capacity];
+        loadTimes = new int[capacity];
+        players = new int[capacity];
+        heapIndex = new int[capacity];
+        Arrays.fill(heapIndex, -1);
+        used = new boolean[capacity];
+        heap = new int[capacity];
+        heapSize = 0;
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,345 @@
+package com.kebapci42.opticore;
+
+import org.bukkit.ChatColor;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.WorldBorder;
+import org.bukkit.command.CommandSender;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Generates terrain ahead of time so players never wait on the world generator.
+//
+// Each job walks a square spiral of chunks outward from a centre. Where the server has
+// World#getChunkAtAsync (Paper), chunks are requested through it, which generates off
+// the main thread; the number of outstanding requests follows MSPT headroom, growing
+// by one while ticks stay under target-mspt and halving when they go over. Elsewhere
+// one chunk at a time is loaded synchronously within the per-tick budget. Already
+// generated chunks are skipped. Generation pauses while players are online (optional)
+// or MSPT is above pause-mspt; without exact tick times, while the mean tick interval
+// says the server is below 19 TPS.
+// Progress is saved to pregen.yml every 30 seconds and on shutdown, as the lowest
+// spiral index not yet known to be done, so a restart resumes without gaps.
+// Main thread only; Paper completes the async futures on the main thread.
+class ChunkPregenerator {
+    private static final int[] STEP_X = {1, 0, -1, 0};
+    private static final int[] STEP_Z = {0, 1, 0, -1};
+
+    private final OptiCore plugin;
+    private final File stateFile;
+    private final List<Job> jobs = new ArrayList<>();
+    private final boolean async;
+    private int concurrency = 1;
+    private String pauseReason;
+    private long ticks;
+
+    private static final class Job {
+        final String world;
+        final int centerX;
+        final int centerZ;
+        final int radius;
+        final long total;
+        // Spiral cursor: index of the next chunk to request and its offset from the centre
+        long next;
+        int x;
+        int z;
+        int direction;
+        int legLength = 1;
+        int legStep;
+        long[] inFlight = new long[0];
+        int inFlightCount;
+        long generated;
+        long skipped;
+        long failed;
+
+        Job(String world, int centerX, int centerZ, int radius) {
+            this.world = world;
+            this.centerX = centerX;
+            this.centerZ = centerZ;
+            this.radius = radius;
+            this.total = (2L * radius + 1) * (2L * radius + 1);
+        }
+
+        void advance() {
+            x += STEP_X[direction];
+            z += STEP_Z[direction];
+            next++;
+            if (++legStep == legLength) {
+                legStep = 0;
+                direction = (direction + 1) & 3;
+                // Legs grow after every second turn: 1, 1, 2, 2, 3, 3, ...
+                if (direction == 0 || direction == 2) {
+                    legLength++;
+                }
+            }
+        }
+
+        // Lowest index that may not be generated yet
+        long resumeIndex() {
+            long lowest = next;
+            for (int i = 0; i < inFlightCount; i++) {
+                lowest = Math.min(lowest, inFlight[i]);
+            }
+            return lowest;
+        }
+
+        void removeInFlight(long index) {
+            for (int i = 0; i < inFlightCount; i++) {
+                if (inFlight[i] == index) {
+                    inFlight[i] = inFlight[--inFlightCount];
+                    return;
+                }
+            }
+        }
+    }
+
+    ChunkPregenerator(OptiCore plugin) {
+        this.plugin = plugin;
+        this.stateFile = new File(plugin.getDataFolder(), "pregen.yml");
+        this.async = OptiCore.hasMethod(World.class, "getChunkAtAsync", int.class, int.class, boolean.class);
+    }
+
+    void start() {
+        load();
+        new BukkitRunnable() {
+            @Override
+            public void run() {
+                tick();
+            }
+        }.runTaskTimer(plugin, 40L, 1L);
+    }
+
+    void stop() {
+        if (!jobs.isEmpty()) {
+            save();
+        }
+    }
+
+    boolean isActive() {
+        return !jobs.isEmpty();
+    }
+
+    void handleCommand(CommandSender sender, String[] args) {
+        String action = args.length > 1 ? args[1].toLowerCase() : "status";
+        if (action.equals("status")) {
+            sendStatus(sender);
+            return;
+        }
+        if (args.length < 3 || !(action.equals("start") || action.equals("stop"))) {
+            sender.sendMessage(ChatColor.RED + "Usage: /opticore pregen [status | start <world> [radius] | stop <world>]");
+            return;
+        }
+        World world = plugin.getServer().getWorld(args[2]);
+        if (world == null) {
+            sender.sendMessage(ChatColor.RED + "Unknown world: " + args[2]);
+            return;
+        }
+        Job existing = find(world.getName());
+        if (action.equals("stop")) {
+            if (existing == null) {
+                sender.sendMessage(ChatColor.YELLOW + "No pre-generation running in " + world.getName());
+                return;
+            }
+            jobs.remove(existing);
+            save();
+            sender.sendMessage(ChatColor.GREEN + "Stopped pre-generation in " + world.getName() + " at " + describe(existing));
+            return;
+        }
+        if (existing != null) {
+            sender.sendMessage(ChatColor.YELLOW + "Pre-generation already running in " + world.getName() + ": " + describe(existing));
+            return;
+        }
+        WorldBorder border = world.getWorldBorder();
+        Location center = border.getCenter();
+        int radius;
+        if (args.length > 3) {
+            try {
+                radius = Integer.parseInt(args[3]);
+            } catch (NumberFormatException e) {
+                radius = -1;
+            }
+        } else {
+            // Default: up to the world border, capped by max-radius
+            radius = (int) Math.min(plugin.getSettings().pregenMaxRadius, border.getSize() / 2 / 16);
+        }
+        if (radius < 0 || radius > plugin.getSettings().pregenMaxRadius) {
+            sender.sendMessage(ChatColor.RED + "Radius must be between 0 and " + plugin.getSettings().pregenMaxRadius + " chunks");
+            return;
+        }
+        Job job = new Job(world.getName(), center.getBlockX() >> 4, center.getBlockZ() >> 4, radius);
+        jobs.add(job);
+        save();
+        sender.sendMessage(ChatColor.GREEN + String.format("Pre-generating %s: %d chunks around chunk %d, %d",
+            world.getName(), job.total, job.centerX, job.centerZ));
+    }
+
+    private void tick() {
+        if (jobs.isEmpty()) return;
+        ticks++;
+        if (ticks % 20 == 0) {
+            adjust();
+        }
+        if (ticks % 600 == 0) {
+            save();
+        }
+        if (pauseReason != null) return;
+
+        // One job at a time, oldest first
+        Job job = jobs.get(0);
+        World world = plugin.getServer().getWorld(job.world);
+        if (world == null) return; // Not loaded (yet); keep the job
+        Settings settings = plugin.getSettings();
+        if (job.inFlight.length < settings.pregenMaxConcurrency) {
+            long[] grown = new long[settings.pregenMaxConcurrency];
+            System.arraycopy(job.inFlight, 0, grown, 0, job.inFlightCount);
+            job.inFlight = grown;
+        }
+        int limit = Math.min(concurrency, job.inFlight.length);
+        long deadline = System.nanoTime() + settings.pregenBudgetNanos;
+        int requested = 0;
+        while (job.next < job.total && System.nanoTime() < deadline
+                && (async ? job.inFlightCount < limit : requested < limit)) {
+            int chunkX = job.centerX + job.x;
+            int chunkZ = job.centerZ + job.z;
+            long index = job.next;
+            job.advance();
+            if (world.isChunkGenerated(chunkX, chunkZ)) {
+                job.skipped++;
+                continue;
+            }
+            requested++;
+            if (async) {
+                job.inFlight[job.inFlightCount++] = index;
+                world.getChunkAtAsync(chunkX, chunkZ, true).whenComplete((chunk, error) -> {
+                    job.removeInFlight(index);
+                    if (error != null) {
+                        job.failed++;
+                    } else {
+                        job.generated++;
+                    }
+                });
+            } else {
+                world.loadChunk(chunkX, chunkZ, true);
+                world.unloadChunkRequest(chunkX, chunkZ);
+                job.generated++;
+            }
+        }
+        if (job.next >= job.total && job.inFlightCount == 0) {
+            jobs.remove(job);
+            save();
+            plugin.getLogger().info("Pre-generation of " + job.world + " complete: " + job.generated + " generated, "
+                + job.skipped + " already present, " + job.failed + " failed");
+        }
+    }
+
+    // Once a second: pause or resume, and move the concurrency limit with MSPT headroom
+    private void adjust() {
+        Settings settings = plugin.getSettings();
+        PerformanceMonitor monitor = plugin.getPerformanceMonitor();
+        String reason = null;
+        if (settings.pregenPauseWithPlayers && !plugin.getServer().getOnlinePlayers().isEmpty()) {
+            reason = "players online";
+        }
+        if (monitor.getTickSampler().isPrecise()) {
+            double mspt = monitor.getMsptHistory().latest(0.0);
+            if (mspt > settings.pregenPauseMspt) {
+                reason = reason != null ? reason : String.format("MSPT %.1f", mspt);
+                concurrency = 1;
+            } else if (mspt > settings.pregenTargetMspt) {
+                concurrency = Math.max(1, concurrency / 2);
+            } else {
+                concurrency = Math.min(settings.pregenMaxConcurrency, concurrency + 1);
+            }
+        } else {
+            // Tick intervals only show an overrun once TPS drops (an interval over the
+            // 50ms budget); stay at one chunk per tick and pause below 19 TPS
+            double interval = monitor.getMsptHistory().latest(0.0);
+            if (interval > 1000.0 / 19.0) {
+                reason = reason != null ? reason : String.format("tick interval %.1fms", interval);
+            }
+            concurrency = 1;
+        }
+        if (reason != null && pauseReason == null) {
+            plugin.getLogger().info("Pre-generation paused: " + reason);
+        } else if (reason == null && pauseReason != null) {
+            plugin.getLogger().info("Pre-generation resumed");
+        }
+        pauseReason = reason;
+    }
+
+    private Job find(String world) {
+        for (Job job : jobs) {
+            if (job.world.equals(world)) return job;
+        }
+        return null;
+    }
+
+    private void sendStatus(CommandSender sender) {
+        if (jobs.isEmpty()) {
+            sender.sendMessage(ChatColor.YELLOW + "No pre-generation running");
+            return;
+        }
+        sender.sendMessage(ChatColor.AQUA + "Pre-generation (" + (async ? "async" : "sync") + ", "
+            + (pauseReason != null ? "paused: " + pauseReason : concurrency + " concurrent") + "):");
+        for (Job job : jobs) {
+            sender.sendMessage(ChatColor.WHITE + "  " + job.world + ": " + ChatColor.YELLOW + describe(job));
+        }
+    }
+
+    private String describe(Job job) {
+        return String.format("%.1f%% (%d/%d), %d generated, %d present, %d failed",
+            job.next * 100.0 / job.total, job.next, job.total, job.generated, job.skipped, job.failed);
+    }
+
+    String describeProgress() {
+        if (jobs.isEmpty()) return "idle";
+        Job job = jobs.get(0);
+        return job.world + " " + String.format("%.1f%%", job.next * 100.0 / job.total)
+            + (pauseReason != null ? ", paused: " + pauseReason : ", " + concurrency + " concurrent");
+    }
+
+    private void load() {
+        if (!stateFile.exists()) return;
+        YamlConfiguration state = YamlConfiguration.loadConfiguration(stateFile);
+        if (!state.isConfigurationSection("worlds")) return;
+        for (String world : state.getConfigurationSection("worlds").getKeys(false)) {
+            String path = "worlds." + world + ".";
+            Job job = new Job(world, state.getInt(path + "center-x"), state.getInt(path + "center-z"),
+                state.getInt(path + "radius"));
+            long resume = Math.min(job.total, state.getLong(path + "done"));
+            while (job.next < resume) {
+                job.advance();
+            }
+            job.generated = state.getLong(path + "generated");
+            job.skipped = state.getLong(path + "skipped");
+            job.failed = state.getLong(path + "failed");
+            jobs.add(job);
+            plugin.getLogger().info("Resuming pre-generation of " + world + " at " + describe(job));
+        }
+    }
+
+    private void save() {
+        YamlConfiguration state = YamlConfiguration.loadConfiguration(stateFile);
+        state.set("worlds", null);
+        for (Job job : jobs) {
+            String path = "worlds." + job.world + ".";
+            state.set(path + "center-x", job.centerX);
+            state.set(path + "center-z", job.centerZ);
+            state.set(path + "radius", job.radius);
+            state.set(path + "done", job.resumeIndex());
+            state.set(path + "generated", job.generated);
+            state.set(path + "skipped", job.skipped);
+            state.set(path + "failed", job.failed);
+        }
+        try {
+            state.save(stateFile);
+        } catch (IOException e) {
+            plugin.getLogger().warning("Could not save pre-generation progress - " + e.getMessage());
+        }
+    }
+}
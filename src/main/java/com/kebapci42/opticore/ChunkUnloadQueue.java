@@ -0,0 +1,129 @@
+package com.kebapci42.opticore;
+
+import org.bukkit.scheduler.BukkitRunnable;
+
+// Spreads chunk unloads (each one a synchronous save) across ticks.
+//
+// ChunkOptimizer queues cold chunks here instead of unloading them on the spot; a
+// candidate leaves the table's coldness heap while it is queued, so repeated requests
+// cannot queue it twice. Every tick the queue works through entries until the per-tick
+// budget or count is spent, always at least one; skipped entries spend both like
+// unloads. The budget shrinks as MSPT climbs from target-mspt towards the 50ms tick
+// budget, so an emergency pass no longer turns into a burst of saves in the tick that
+// can least afford it. Chunks are re-checked when their turn comes; ones that became
+// active again go back to the heap. Main thread only.
+class ChunkUnloadQueue {
+    private static final int MAX_QUEUED = 1 << 16;
+
+    private final OptiCore plugin;
+    private final ChunkOptimizer optimizer;
+    // Ring buffer of (table, key) pairs; capacity is a power of two
+    private ChunkActivityTable[] tables = new ChunkActivityTable[64];
+    private long[] keys = new long[64];
+    private int head;
+    private int size;
+    private double budgetScale = 1.0;
+    private long ticks;
+    private long unloaded;
+    private long skipped;
+    private long unloadNanos;
+    private int secondUnloads;
+    private int lastSecondUnloads;
+
+    ChunkUnloadQueue(OptiCore plugin, ChunkOptimizer optimizer) {
+        this.plugin = plugin;
+        this.optimizer = optimizer;
+    }
+
+    void start() {
+        new BukkitRunnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }.runTaskTimer(plugin, 1L, 1L);
+    }
+
+    // False when the queue is full
+    boolean offer(ChunkActivityTable table, long key) {
+        if (size == MAX_QUEUED) return false;
+        if (size == tables.length) {
+            grow();
+        }
+        int tail = (head + size) & (tables.length - 1);
+        tables[tail] = table;
+        keys[tail] = key;
+        size++;
+        return true;
+    }
+
+    int size() {
+        return size;
+    }
+
+    String describe() {
+        return String.format("%d queued, %d/s, %d unloaded (avg %.2fms), %d skipped as active or in use, budget %.0f%%",
+            size, lastSecondUnloads, unloaded, unloaded == 0 ? 0 : unloadNanos / 1e6 / unloaded, skipped, budgetScale * 100);
+    }
+
+    private void drain() {
+        if (++ticks % 20 == 0) {
+            adapt();
+            lastSecondUnloads = secondUnloads;
+            secondUnloads = 0;
+        }
+        if (size == 0) return;
+        Settings settings = plugin.getSettings();
+        long deadline = System.nanoTime() + (long) (settings.chunkUnloadBudgetNanos * budgetScale);
+        int done = 0;
+        while (size > 0 && done < settings.chunkUnloadMaxPerTick) {
+            ChunkActivityTable table = tables[head];
+            long key = keys[head];
+            tables[head] = null;
+            head = (head + 1) & (tables.length - 1);
+            size--;
+            long start = System.nanoTime();
+            boolean didUnload = optimizer.unloadQueued(table, key);
+            long end = System.nanoTime();
+            if (didUnload) {
+                unloadNanos += end - start;
+                unloaded++;
+                secondUnloads++;
+            } else {
+                skipped++;
+            }
+            // Skips count too: a refused unload still costs a World#unloadChunk call,
+            // and a stale backlog must not be walked in one tick
+            done++;
+            if (end >= deadline) break;
+        }
+    }
+
+    // Once a second: full budget up to target-mspt, shrinking linearly to a tenth at 50ms
+    private void adapt() {
+        PerformanceMonitor monitor = plugin.getPerformanceMonitor();
+        if (monitor.getTickSampler().isPrecise()) {
+            double target = plugin.getSettings().chunkUnloadTargetMspt;
+            double mspt = monitor.getMsptHistory().latest(0.0);
+            budgetScale = mspt <= target ? 1.0 : Math.max(0.1, 1.0 - 0.9 * (mspt - target) / Math.max(1.0, 50.0 - target));
+        } else {
+            // Tick intervals only show an overrun once TPS drops (Server#getTPS is
+            // Paper API, so read the interval sampler's mean instead)
+            budgetScale = monitor.getMsptHistory().latest(0.0) <= 1000.0 / 19.0 ? 1.0 : 0.25;
+        }
+    }
+
+    private void grow() {
+        int capacity = tables.length << 1;
+        ChunkActivityTable[] grownTables = new ChunkActivityTable[capacity];
+        long[] grownKeys = new long[capacity];
+        for (int i = 0; i < size; i++) {
+            int from = (head + i) & (tables.length - 1);
+            grownTables[i] = tables[from];
+            grownKeys[i] = keys[from];
+        }
+        tables = grownTables;
+        keys = grownKeys;
+        head = 0;
+    }
+}
@@ -0,0 +1,257 @@
+package com.kebapci42.opticore;
+
+import com.kebapci42.opticore.util.ChunkKey;
+import org.bukkit.Chunk;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Item;
+import org.bukkit.entity.Mob;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+// Resumable, time-sliced entity culling. A sweep walks every loaded chunk of every
+// world, but only spends up to budgetNanos of main-thread time per tick; the cursor
+// (world, chunk) carries over to the next tick until the sweep completes. A world's
+// loaded chunks are snapshotted when the cursor reaches it, at most one world per
+// tick, since getLoadedChunks creates a Chunk object for every one of them.
+public class CullingEngine {
+    private static final long[] NO_CHUNKS = new long[0];
+
+    private final Plugin plugin;
+    private final ItemSpatialIndex itemIndex;
+    private final PlayerProximityGrid playerGrid = new PlayerProximityGrid();
+    private final Location scratch = new Location(null, 0, 0, 0);
+    private final ArrayDeque<Rule> pending = new ArrayDeque<>();
+    private final ItemSpatialIndex.ItemVisitor itemVisitor = this::cullItem;
+    private MobThrottler mobThrottler;
+    private volatile long budgetNanos;
+    private BukkitTask task;
+
+    // Cursor of the active sweep
+    private Rule active;
+    private final List<World> sweepWorlds = new ArrayList<>();
+    private long[] worldChunks = NO_CHUNKS;
+    private int worldCursor;  // Worlds snapshotted so far; the cursor is in the last of them
+    private int chunkCursor;
+    private int chunksTotal;
+    private int chunksDone;
+    private int itemsRemoved;
+    private int mobsThrottled;
+    private int ticksUsed;
+    private volatile String lastResult = "none";
+    private volatile long totalItemsRemoved;
+    private volatile long totalMobsThrottled;
+    private volatile long sweepsCompleted;
+
+    // Receives mobs beyond a rule's mobRadius; returns true if it throttled the mob
+    public interface MobThrottler {
+        boolean throttle(Mob mob);
+    }
+
+    public static final class Rule {
+        final String name;
+        final int maxItemAge;     // Items older than this are culled; negative skips items
+        final double itemRadius;  // Items this close to a player are kept; <= 0 ignores players
+        final double mobRadius;   // Mobs farther than this from every player lose AI; negative skips mobs
+
+        public Rule(String name, int maxItemAge, double itemRadius, double mobRadius) {
+            this.name = name;
+            this.maxItemAge = maxItemAge;
+            this.itemRadius = itemRadius;
+            this.mobRadius = mobRadius;
+        }
+
+        boolean needsPlayers() {
+            return (maxItemAge >= 0 && itemRadius > 0) || mobRadius >= 0;
+        }
+    }
+
+    public CullingEngine(Plugin plugin, ItemSpatialIndex itemIndex, long budgetNanos) {
+        this.plugin = plugin;
+        this.itemIndex = itemIndex;
+        this.budgetNanos = budgetNanos;
+    }
+
+    // Without a throttler, rules leave mobs alone
+    public void setMobThrottler(MobThrottler mobThrottler) {
+        this.mobThrottler = mobThrottler;
+    }
+
+    public void setBudgetNanos(long budgetNanos) {
+        this.budgetNanos = budgetNanos;
+    }
+
+    public long getBudgetNanos() {
+        return budgetNanos;
+    }
+
+    // Queues a sweep; a rule with the same name already running or queued is not repeated
+    public void submit(Rule rule) {
+        if (active != null && active.name.equals(rule.name)) return;
+        for (Rule queued : pending) {
+            if (queued.name.equals(rule.name)) return;
+        }
+        pending.add(rule);
+        if (task == null) {
+            task = new BukkitRunnable() {
+                @Override
+                public void run() {
+                    tick();
+                }
+            }.runTaskTimer(plugin, 1L, 1L);
+        }
+    }
+
+    public boolean isRunning() {
+        return active != null || !pending.isEmpty();
+    }
+
+    public String describeProgress() {
+        Rule rule = active;
+        if (rule == null) {
+            return "idle (last: " + lastResult + ")";
+        }
+        // Later worlds are not snapshotted yet, so only the current world has a known size
+        return rule.name + " world " + worldCursor + "/" + sweepWorlds.size() + ", chunk " + chunkCursor
+            + "/" + worldChunks.length + " (" + chunksDone + " chunks, " + ticksUsed + " ticks, "
+            + pending.size() + " queued)";
+    }
+
+    // Lifetime totals over completed sweeps; readable from any thread
+    public long getTotalItemsRemoved() {
+        return totalItemsRemoved;
+    }
+
+    public long getTotalMobsThrottled() {
+        return totalMobsThrottled;
+    }
+
+    public long getSweepsCompleted() {
+        return sweepsCompleted;
+    }
+
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        pending.clear();
+        active = null;
+        sweepWorlds.clear();
+        worldChunks = NO_CHUNKS;
+    }
+
+    private void tick() {
+        long deadline = System.nanoTime() + budgetNanos;
+        if (active == null && !startNext()) {
+            task.cancel();
+            task = null;
+            return;
+        }
+        ticksUsed++;
+        if (active.needsPlayers()) {
+            playerGrid.rebuild(plugin.getServer());
+        }
+        boolean snapshotted = false;
+        do {
+            if (chunkCursor < worldChunks.length) {
+                advance();
+            } else if (worldCursor < sweepWorlds.size()) {
+                if (snapshotted) return; // One world's snapshot per tick
+                snapshotNextWorld();
+                snapshotted = true;
+            } else {
+                finish();
+                if (!startNext()) return;
+                if (active.needsPlayers()) {
+                    playerGrid.rebuild(plugin.getServer());
+                }
+            }
+        } while (System.nanoTime() < deadline);
+    }
+
+    private boolean startNext() {
+        Rule next = pending.poll();
+        if (next == null) return false;
+        active = next;
+        sweepWorlds.clear();
+        sweepWorlds.addAll(plugin.getServer().getWorlds());
+        worldChunks = NO_CHUNKS;
+        worldCursor = 0;
+        chunkCursor = 0;
+        chunksTotal = 0;
+        chunksDone = 0;
+        itemsRemoved = 0;
+        mobsThrottled = 0;
+        ticksUsed = 0;
+        return true;
+    }
+
+    private void snapshotNextWorld() {
+        World world = sweepWorlds.get(worldCursor++);
+        Chunk[] chunks = world.getLoadedChunks();
+        long[] keys = new long[chunks.length];
+        for (int i = 0; i < chunks.length; i++) {
+            keys[i] = ChunkKey.pack(chunks[i].getX(), chunks[i].getZ());
+        }
+        worldChunks = keys;
+        chunkCursor = 0;
+        chunksTotal += keys.length;
+    }
+
+    // Processes the chunk under the cursor
+    private void advance() {
+        World world = sweepWorlds.get(worldCursor - 1);
+        long key = worldChunks[chunkCursor++];
+        chunksDone++;
+        int chunkX = ChunkKey.x(key);
+        int chunkZ = ChunkKey.z(key);
+        if (!world.isChunkLoaded(chunkX, chunkZ)) return;
+
+        if (active.maxItemAge >= 0) {
+            itemsRemoved += itemIndex.sweepChunk(world, chunkX, chunkZ, itemVisitor);
+        }
+        if (active.mobRadius >= 0 && mobThrottler != null) {
+            for (Entity entity : world.getChunkAt(chunkX, chunkZ).getEntities()) {
+                if (entity instanceof Mob) {
+                    Mob mob = (Mob) entity;
+                    if (mob.hasAI() && !isPlayerNearby(mob, active.mobRadius) && mobThrottler.throttle(mob)) {
+                        mobsThrottled++;
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean cullItem(Item item) {
+        if (item.getTicksLived() <= active.maxItemAge) return false;
+        if (active.itemRadius > 0 && isPlayerNearby(item, active.itemRadius)) return false;
+        item.remove();
+        return true;
+    }
+
+    private boolean isPlayerNearby(Entity entity, double radius) {
+        entity.getLocation(scratch);
+        return playerGrid.isPlayerNearby(entity.getWorld(), scratch.getX(), scratch.getY(), scratch.getZ(), radius);
+    }
+
+    private void finish() {
+        lastResult = active.name + ", " + itemsRemoved + " items removed, " + mobsThrottled
+            + " mobs throttled, " + chunksTotal + " chunks in " + ticksUsed + " ticks";
+        totalItemsRemoved += itemsRemoved;
+        totalMobsThrottled += mobsThrottled;
+        sweepsCompleted++;
+        if (itemsRemoved > 0 || mobsThrottled > 0) {
+            plugin.getLogger().info("Culling sweep finished: " + lastResult);
+        }
+        active = null;
+        sweepWorlds.clear();
+        worldChunks = NO_CHUNKS;
+    }
+}
@@ -0,0 +1,35 @@
+package com.kebapci42.opticore;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// Flight recorder event for an emergency mode transition. Only loaded through
+// FlightRecording, which checks that the JVM has JFR first.
+@Name("com.kebapci42.opticore.Emergency")
+@Label("Emergency Transition")
+@Category("OptiCore")
+@Description("Emergency optimization activated, backed off at the activation limit, or recovered")
+@StackTrace(false)
+class EmergencyEvent extends jdk.jfr.Event {
+    @Label("Transition")
+    String transition;
+
+    @Label("TPS")
+    @Description("TPS, or the TPS equivalent of p95 MSPT with the MSPT trigger")
+    double tps;
+
+    @Label("Consecutive Emergencies")
+    int consecutive;
+
+    static void emit(String transition, double tps, int consecutive) {
+        EmergencyEvent event = new EmergencyEvent();
+        if (!event.shouldCommit()) return;
+        event.transition = transition;
+        event.tps = tps;
+        event.consecutive = consecutive;
+        event.commit();
+    }
+}
@@ -0,0 +1,173 @@
+package com.kebapci42.opticore;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import org.bukkit.ChatColor;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+
+// Keeps a JDK Flight Recorder recording running so an emergency comes with evidence.
+//
+// OptiCore's own events (optimizer actions, emergency transitions, tick overruns) are
+// emitted whenever the JVM has JFR, so any recording started externally sees them too.
+// When enabled, a continuous recording with the JDK's low-overhead "default" settings
+// (or "profile") keeps the last max-age seconds on disk (bounded by max-size); on an emergency that
+// window is dumped to recordings/ a few seconds later, so the dump shows the stall and
+// the response to it. Dumps are rate limited and only the newest keep-dumps files stay.
+// Not every JVM ships JFR, so the event classes are only touched after checking.
+// Main thread, except the dump itself and appendReport, which run off-thread.
+class FlightRecording {
+    // Dump a little after the emergency so the optimizer's reaction is included
+    private static final long DUMP_DELAY_TICKS = 100L;
+
+    private final OptiCore plugin;
+    private final File dumpFolder;
+    private boolean available;
+    private volatile Recording recording;
+    private long lastDumpRequest;
+    private volatile String lastDump;
+    private volatile long lastDumpTime;
+    private volatile String lastDumpReason;
+    private volatile long dumps;
+
+    FlightRecording(OptiCore plugin) {
+        this.plugin = plugin;
+        this.dumpFolder = new File(plugin.getDataFolder(), "recordings");
+    }
+
+    void start() {
+        try {
+            available = FlightRecorder.isAvailable();
+        } catch (LinkageError e) {
+            available = false;
+        }
+        if (!available) {
+            plugin.getLogger().info("This JVM has no Flight Recorder - JFR events and emergency recordings disabled");
+            return;
+        }
+        Settings settings = plugin.getSettings();
+        if (!settings.jfrEnabled) return;
+        try {
+            Recording started = new Recording(Configuration.getConfiguration(settings.jfrConfiguration));
+            started.setName("OptiCore");
+            started.setToDisk(true);
+            started.setMaxAge(Duration.ofSeconds(settings.jfrMaxAgeSeconds));
+            started.setMaxSize(settings.jfrMaxSizeMb * 1024L * 1024L);
+            started.start();
+            recording = started;
+            plugin.getLogger().info("Continuous flight recording started (last " + settings.jfrMaxAgeSeconds
+                + "s, " + settings.jfrConfiguration + " settings)");
+        } catch (Exception e) {
+            plugin.getLogger().warning("Could not start flight recording - " + e.getMessage());
+        }
+    }
+
+    void stop() {
+        Recording target = recording;
+        if (target == null) return;
+        recording = null;
+        target.close();
+    }
+
+    void tickOverrun(double tickMillis, boolean exact) {
+        if (available && tickMillis > plugin.getSettings().jfrOverrunMspt) {
+            TickOverrunEvent.emit(tickMillis, exact);
+        }
+    }
+
+    void action(ActionFeedback.Action action) {
+        if (available) {
+            OptimizerActionEvent.emit(action.label, plugin.getAdaptiveOptimizer().getCurrentProfile().name(),
+                plugin.getPerformanceMonitor().getMsptHistory().latest(0.0));
+        }
+    }
+
+    void emergency(String transition, double tps, int consecutive) {
+        if (available) {
+            EmergencyEvent.emit(transition, tps, consecutive);
+        }
+    }
+
+    // Dumps the recorded window shortly; false when there is no recording or one was
+    // dumped within the cooldown
+    boolean requestDump(String reason) {
+        if (recording == null) return false;
+        long now = System.currentTimeMillis();
+        if (lastDumpRequest != 0 && now - lastDumpRequest < plugin.getSettings().jfrDumpCooldownSeconds * 1000L) {
+            return false;
+        }
+        lastDumpRequest = now;
+        new BukkitRunnable() {
+            @Override
+            public void run() {
+                // Copying the recorded chunks is file I/O; keep it off the main thread
+                CompletableFuture.runAsync(() -> dump(reason));
+            }
+        }.runTaskLater(plugin, DUMP_DELAY_TICKS);
+        return true;
+    }
+
+    private void dump(String reason) {
+        Recording target = recording;
+        if (target == null) return;
+        if (!dumpFolder.isDirectory() && !dumpFolder.mkdirs()) {
+            plugin.getLogger().warning("Could not create " + dumpFolder);
+            return;
+        }
+        String name = "emergency-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".jfr";
+        Path path = new File(dumpFolder, name).toPath();
+        try {
+            target.dump(path);
+        } catch (Exception e) {
+            plugin.getLogger().warning("Could not dump flight recording - " + e.getMessage());
+            return;
+        }
+        lastDump = "recordings/" + name;
+        lastDumpTime = System.currentTimeMillis();
+        lastDumpReason = reason;
+        dumps++;
+        plugin.getLogger().warning("Flight recording of the last " + plugin.getSettings().jfrMaxAgeSeconds
+            + "s saved to " + path);
+        pruneDumps();
+    }
+
+    private void pruneDumps() {
+        File[] files = dumpFolder.listFiles((dir, name) -> name.startsWith("emergency-") && name.endsWith(".jfr"));
+        int keep = plugin.getSettings().jfrKeepDumps;
+        if (files == null || files.length <= keep) return;
+        // Timestamped names sort oldest first
+        Arrays.sort(files, Comparator.comparing(File::getName));
+        for (int i = 0; i < files.length - keep; i++) {
+            if (!files[i].delete()) {
+                plugin.getLogger().warning("Could not delete old flight recording " + files[i].getName());
+            }
+        }
+    }
+
+    void appendReport(StringBuilder report) {
+        if (!available) return;
+        report.append(ChatColor.AQUA).append("Flight recorder: ").append(ChatColor.WHITE);
+        if (recording == null) {
+            report.append("events only (no continuous recording)\n");
+            return;
+        }
+        report.append("recording the last ").append(plugin.getSettings().jfrMaxAgeSeconds).append("s, ")
+            .append(dumps).append(" emergency dumps since startup\n");
+        String dump = lastDump;
+        if (dump == null) return;
+        long ago = (System.currentTimeMillis() - lastDumpTime) / 1000;
+        report.append(ChatColor.WHITE).append("  Last dump: ").append(ChatColor.YELLOW).append(dump)
+            .append(ChatColor.GRAY).append(" (").append(ago < 120 ? ago + "s" : ago / 60 + "m").append(" ago, ")
+            .append(lastDumpReason).append(")\n")
+            .append(ChatColor.GRAY).append("  Open in JDK Mission Control, or: jfr print --categories OptiCore <file>\n");
+    }
+}
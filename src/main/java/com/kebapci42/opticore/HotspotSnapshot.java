@@ -0,0 +1,129 @@
+package com.kebapci42.opticore;
+
+import com.kebapci42.opticore.util.ChunkKey;
+import org.bukkit.ChatColor;
+import org.bukkit.Chunk;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.EntityType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Raw per-chunk counts captured on the main thread in a single pass over the loaded
+// chunks. Everything expensive (ranking, sorting, formatting) happens later in
+// appendReport, which is safe to call from any thread because the snapshot only
+// holds primitives and strings.
+final class HotspotSnapshot {
+    private static final EntityType[] ENTITY_TYPES = EntityType.values();
+
+    private final List<WorldCounts> worlds = new ArrayList<>();
+    private long captureNanos;
+
+    private static final class WorldCounts {
+        final String name;
+        final long[] chunkKeys;
+        final int[] entities;
+        final int[] tileEntities;
+        final int[] typeCounts = new int[ENTITY_TYPES.length];
+
+        WorldCounts(String name, int chunks) {
+            this.name = name;
+            this.chunkKeys = new long[chunks];
+            this.entities = new int[chunks];
+            this.tileEntities = new int[chunks];
+        }
+    }
+
+    // Main thread only
+    static HotspotSnapshot capture(OptiCore plugin) {
+        long start = System.nanoTime();
+        boolean paper = plugin.isPaperServer();
+        HotspotSnapshot snapshot = new HotspotSnapshot();
+        for (World world : plugin.getServer().getWorlds()) {
+            Chunk[] chunks = world.getLoadedChunks();
+            WorldCounts counts = new WorldCounts(world.getName(), chunks.length);
+            for (int i = 0; i < chunks.length; i++) {
+                Chunk chunk = chunks[i];
+                counts.chunkKeys[i] = ChunkKey.pack(chunk.getX(), chunk.getZ());
+                Entity[] entities = chunk.getEntities();
+                counts.entities[i] = entities.length;
+                for (Entity entity : entities) {
+                    counts.typeCounts[entity.getType().ordinal()]++;
+                }
+                // Paper can hand out live tile entities instead of copying a snapshot of each
+                counts.tileEntities[i] = paper ? chunk.getTileEntities(false).length : chunk.getTileEntities().length;
+            }
+            snapshot.worlds.add(counts);
+        }
+        snapshot.captureNanos = System.nanoTime() - start;
+        return snapshot;
+    }
+
+    void appendReport(StringBuilder report, int topChunks, int topTypes) {
+        report.append(ChatColor.GRAY).append(String.format("Snapshot of %d chunks taken in %.2fms\n",
+            totalChunks(), captureNanos / 1e6));
+
+        report.append(ChatColor.AQUA).append("Top chunks by entities:\n");
+        appendTopChunks(report, topChunks, true);
+        report.append(ChatColor.AQUA).append("Top chunks by tile entities:\n");
+        appendTopChunks(report, topChunks, false);
+
+        for (WorldCounts world : worlds) {
+            long[] ranked = new long[ENTITY_TYPES.length];
+            int n = 0;
+            int total = 0;
+            for (int type = 0; type < ranked.length; type++) {
+                int count = world.typeCounts[type];
+                if (count > 0) {
+                    ranked[n++] = ((long) count << 32) | type;
+                    total += count;
+                }
+            }
+            report.append(ChatColor.AQUA).append("Entities in ").append(world.name)
+                .append(" (").append(total).append("):\n");
+            Arrays.sort(ranked, 0, n);
+            for (int i = n - 1; i >= Math.max(0, n - topTypes); i--) {
+                report.append(ChatColor.WHITE).append("  ").append(ENTITY_TYPES[(int) ranked[i]].name())
+                    .append(": ").append(ChatColor.YELLOW).append(ranked[i] >>> 32).append('\n');
+            }
+        }
+    }
+
+    private void appendTopChunks(StringBuilder report, int limit, boolean byEntities) {
+        // Pack (count, world index, chunk index) into longs so ranking is a primitive sort
+        long[] ranked = new long[totalChunks()];
+        int n = 0;
+        for (int w = 0; w < worlds.size(); w++) {
+            int[] counts = byEntities ? worlds.get(w).entities : worlds.get(w).tileEntities;
+            for (int c = 0; c < counts.length; c++) {
+                if (counts[c] > 0) {
+                    ranked[n++] = ((long) counts[c] << 40) | ((long) w << 28) | c;
+                }
+            }
+        }
+        if (n == 0) {
+            report.append(ChatColor.GRAY).append("  none\n");
+            return;
+        }
+        Arrays.sort(ranked, 0, n);
+        for (int i = n - 1; i >= Math.max(0, n - limit); i--) {
+            WorldCounts world = worlds.get((int) ((ranked[i] >>> 28) & 0xFFF));
+            long key = world.chunkKeys[(int) (ranked[i] & 0xFFFFFFF)];
+            report.append(ChatColor.WHITE).append("  ").append(world.name)
+                .append(" chunk ").append(ChunkKey.x(key)).append(", ").append(ChunkKey.z(key))
+                .append(ChatColor.GRAY).append(" (block ").append(ChunkKey.x(key) << 4).append(", ")
+                .append(ChunkKey.z(key) << 4).append("): ")
+                .append(ChatColor.YELLOW).append(ranked[i] >>> 40).append('\n');
+        }
+    }
+
+    private int totalChunks() {
+        int total = 0;
+        for (WorldCounts world : worlds) {
+            total += world.chunkKeys.length;
+        }
+        return total;
+    }
+}
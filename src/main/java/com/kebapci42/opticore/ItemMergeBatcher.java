@@ -0,0 +1,244 @@
+package com.kebapci42.opticore;
+
+import com.destroystokyo.paper.event.server.ServerTickEndEvent;
+import com.kebapci42.opticore.util.ChunkKey;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Item;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Merges dropped items in one pass per tick instead of one neighbour query per spawn.
+//
+// Spawned items are queued during the tick. At the end of the tick (ServerTickEndEvent
+// on Paper, the next scheduler pass elsewhere) the queue is sorted by world, chunk and
+// material, so every run of the sorted queue is a group of items that could stack.
+// Within a group, items fold into the first nearby similar stack with room left, and
+// only the surviving stacks are checked against items already on the ground. An
+// explosion dropping 500 blocks therefore costs one sort and a handful of index
+// queries. Each tick keys and sorts only the oldest SLICE items of the queue (a ring
+// buffer), and merging stops at the per-tick budget; unmerged items of the slice go
+// back to the front of the queue. A flood of drops therefore costs a bounded amount
+// per tick however long the backlog grows. Main thread only.
+class ItemMergeBatcher {
+    // Sort key layout: world (7 bits) | chunk x, z low bits (12 + 12) | material (12) | queue index (20)
+    private static final int INDEX_BITS = 20;
+    private static final int MAX_QUEUED = 1 << INDEX_BITS;
+    private static final int MAX_WORLDS = 1 << 7;
+    // Items keyed and sorted per tick; large enough for an explosion's drops in one pass
+    private static final int SLICE = 2048;
+
+    private final OptiCore plugin;
+    private final Location scratch = new Location(null, 0, 0, 0);
+    private final List<World> worldOrder = new ArrayList<>();
+    private final List<Item> targets = new ArrayList<>();
+    // Ring buffer, oldest at head; capacity is a power of two
+    private Item[] queue = new Item[64];
+    private int head;
+    private int queued;
+    private final long[] sortKeys = new long[SLICE];
+    private final Item[] pending = new Item[SLICE];
+    private int[] targetAmounts = new int[16];
+    private long lastPassNanos;
+
+    ItemMergeBatcher(OptiCore plugin) {
+        this.plugin = plugin;
+    }
+
+    void start() {
+        if (plugin.isPaperServer()) {
+            plugin.getServer().getPluginManager().registerEvents(new PaperTickListener(), plugin);
+            return;
+        }
+        new BukkitRunnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }.runTaskTimer(plugin, 1L, 1L);
+    }
+
+    void enqueue(Item item) {
+        if (queued == MAX_QUEUED) return; // Beyond this the items are simply left alone
+        if (queued == queue.length) {
+            grow();
+        }
+        queue[(head + queued++) & (queue.length - 1)] = item;
+    }
+
+    private void grow() {
+        Item[] grown = new Item[queue.length << 1];
+        for (int i = 0; i < queued; i++) {
+            grown[i] = queue[(head + i) & (queue.length - 1)];
+        }
+        queue = grown;
+        head = 0;
+    }
+
+    private Item itemAt(long sortKey) {
+        return queue[(head + (int) (sortKey & (MAX_QUEUED - 1))) & (queue.length - 1)];
+    }
+
+    int getQueued() {
+        return queued;
+    }
+
+    long getLastPassNanos() {
+        return lastPassNanos;
+    }
+
+    void flush() {
+        if (queued == 0) return;
+        long start = System.nanoTime();
+        long deadline = start + plugin.getSettings().itemMergeBudgetNanos;
+        double radius = plugin.getSettings().itemMergeRadius;
+
+        int slice = Math.min(queued, SLICE);
+        int keys = buildSortKeys(slice);
+        Arrays.sort(sortKeys, 0, keys);
+
+        // At least one group per tick, so a tiny budget still makes progress
+        int run = 0;
+        while (run < keys && (run == 0 || System.nanoTime() < deadline)) {
+            long group = sortKeys[run] >>> INDEX_BITS;
+            int end = run + 1;
+            while (end < keys && sortKeys[end] >>> INDEX_BITS == group) {
+                end++;
+            }
+            mergeGroup(run, end, radius);
+            run = end;
+        }
+
+        // Out of budget: the unprocessed items of the slice go back to the front of the
+        // queue, in sorted order, filling the slice's last positions
+        int kept = keys - run;
+        int mask = queue.length - 1;
+        for (int i = run; i < keys; i++) {
+            pending[i - run] = itemAt(sortKeys[i]);
+        }
+        for (int i = 0; i < slice - kept; i++) {
+            queue[(head + i) & mask] = null;
+        }
+        int newHead = (head + slice - kept) & mask;
+        for (int i = 0; i < kept; i++) {
+            queue[(newHead + i) & mask] = pending[i];
+            pending[i] = null;
+        }
+        head = newHead;
+        queued -= slice - kept;
+        worldOrder.clear();
+        lastPassNanos = System.nanoTime() - start;
+    }
+
+    // Keys the oldest slice items; returns how many were live (dead ones are dropped here)
+    private int buildSortKeys(int slice) {
+        int keys = 0;
+        for (int i = 0; i < slice; i++) {
+            Item item = queue[(head + i) & (queue.length - 1)];
+            if (!item.isValid()) continue;
+            int world = worldIndex(item.getWorld());
+            if (world < 0) continue;
+            item.getLocation(scratch);
+            long chunk = ChunkKey.ofPosition(scratch.getX(), scratch.getZ());
+            long chunkBits = ((long) (ChunkKey.x(chunk) & 0xFFF) << 12) | (ChunkKey.z(chunk) & 0xFFF);
+            long material = item.getItemStack().getType().ordinal() & 0xFFF;
+            sortKeys[keys++] = ((long) world << 56) | (chunkBits << 32) | (material << INDEX_BITS) | i;
+        }
+        return keys;
+    }
+
+    private int worldIndex(World world) {
+        for (int i = 0; i < worldOrder.size(); i++) {
+            if (worldOrder.get(i) == world) return i;
+        }
+        if (worldOrder.size() == MAX_WORLDS) return -1;
+        worldOrder.add(world);
+        return worldOrder.size() - 1;
+    }
+
+    // Folds the group [from, to) of the sorted queue into as few stacks as possible,
+    // then offers each surviving stack to nearby items already on the ground
+    private void mergeGroup(int from, int to, double radius) {
+        ItemSpatialIndex itemIndex = plugin.getItemIndex();
+        ActionCounters counters = plugin.getActionCounters();
+        targets.clear();
+        for (int i = from; i < to; i++) {
+            Item item = itemAt(sortKeys[i]);
+            if (!item.isValid()) continue;
+            ItemStack stack = item.getItemStack();
+            int amount = stack.getAmount();
+            item.getLocation(scratch);
+            double x = scratch.getX(), y = scratch.getY(), z = scratch.getZ();
+
+            int into = -1;
+            for (int t = 0; t < targets.size(); t++) {
+                Item target = targets.get(t);
+                if (targetAmounts[t] + amount > stack.getMaxStackSize()) continue;
+                target.getLocation(scratch);
+                if (Math.abs(scratch.getX() - x) > radius || Math.abs(scratch.getY() - y) > radius
+                        || Math.abs(scratch.getZ() - z) > radius) {
+                    continue;
+                }
+                if (target.getItemStack().isSimilar(stack)) {
+                    into = t;
+                    break;
+                }
+            }
+            if (into >= 0) {
+                targetAmounts[into] += amount;
+                itemIndex.remove(item);
+                item.remove();
+                counters.increment(ActionCounters.Action.ITEM_ENTITIES_SAVED);
+                counters.add(ActionCounters.Action.ITEMS_MERGED, amount);
+            } else {
+                if (targets.size() == targetAmounts.length) {
+                    targetAmounts = Arrays.copyOf(targetAmounts, targetAmounts.length << 1);
+                }
+                targetAmounts[targets.size()] = amount;
+                targets.add(item);
+            }
+        }
+
+        // Write every amount back before querying: a later query may pick another target
+        for (int t = 0; t < targets.size(); t++) {
+            Item target = targets.get(t);
+            ItemStack stack = target.getItemStack();
+            if (stack.getAmount() != targetAmounts[t]) {
+                stack.setAmount(targetAmounts[t]);
+                target.setItemStack(stack);
+            }
+        }
+        for (int t = 0; t < targets.size(); t++) {
+            Item target = targets.get(t);
+            if (!target.isValid()) continue;
+            ItemStack stack = target.getItemStack();
+            // One index query per surviving stack rather than per spawned item
+            Item ground = itemIndex.findMergeCandidate(target, radius);
+            if (ground != null) {
+                ItemStack groundStack = ground.getItemStack();
+                groundStack.setAmount(groundStack.getAmount() + stack.getAmount());
+                ground.setItemStack(groundStack);
+                itemIndex.remove(target);
+                target.remove();
+                counters.increment(ActionCounters.Action.ITEM_ENTITIES_SAVED);
+                counters.add(ActionCounters.Action.ITEMS_MERGED, stack.getAmount());
+            }
+        }
+        targets.clear();
+    }
+
+    // Only instantiated on Paper, so the Paper event class is never loaded elsewhere
+    private final class PaperTickListener implements Listener {
+        @EventHandler(priority = EventPriority.MONITOR)
+        public void onTickEnd(ServerTickEndEvent event) {
+            flush();
+        }
+    }
+}
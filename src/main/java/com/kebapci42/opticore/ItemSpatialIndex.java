@@ -0,0 +1,300 @@
+package com.kebapci42.opticore;
+
+import com.kebapci42.opticore.util.ChunkKey;
+import com.kebapci42.opticore.util.LongObjectMap;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Item;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.entity.EntityPickupItemEvent;
+import org.bukkit.event.entity.ItemDespawnEvent;
+import org.bukkit.event.entity.ItemMergeEvent;
+import org.bukkit.event.entity.ItemSpawnEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.event.world.EntitiesLoadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.plugin.Plugin;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+// Incremental chunk-keyed spatial hash of live dropped items.
+//
+// Entries are filed under the chunk the item was in when it was last seen. Items
+// drift, get picked up by hoppers or are removed by other plugins without an event
+// we can observe, so every read path validates what it touches: dead items are
+// pruned and items that wandered into another chunk are re-filed on the spot.
+// Main thread only.
+public class ItemSpatialIndex implements Listener {
+
+    private final Map<UUID, LongObjectMap<Cell>> worlds = new HashMap<>();
+    private final Location scratch = new Location(null, 0, 0, 0);
+    private int size;
+
+    public interface ItemVisitor {
+        // Return true if the visitor removed the item and it should leave the index
+        boolean visit(Item item);
+    }
+
+    public static final class Cell {
+        private Item[] items = new Item[4];
+        private int size;
+
+        public int size() {
+            return size;
+        }
+
+        public Item get(int index) {
+            return items[index];
+        }
+
+        boolean add(Item item) {
+            for (int i = 0; i < size; i++) {
+                if (items[i] == item) {
+                    return false;
+                }
+            }
+            if (size == items.length) {
+                Item[] grown = new Item[size << 1];
+                System.arraycopy(items, 0, grown, 0, size);
+                items = grown;
+            }
+            items[size++] = item;
+            return true;
+        }
+
+        boolean remove(Item item) {
+            for (int i = 0; i < size; i++) {
+                if (items[i] == item) {
+                    removeAt(i);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void removeAt(int index) {
+            items[index] = items[--size];
+            items[size] = null;
+        }
+    }
+
+    public void register(Plugin plugin) {
+        plugin.getServer().getPluginManager().registerEvents(this, plugin);
+        for (World world : plugin.getServer().getWorlds()) {
+            for (Item item : world.getEntitiesByClass(Item.class)) {
+                add(item);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void add(Item item) {
+        if (item == null || !item.isValid()) return;
+        item.getLocation(scratch);
+        long key = ChunkKey.ofPosition(scratch.getX(), scratch.getZ());
+        LongObjectMap<Cell> cells = cellsOf(item.getWorld(), true);
+        Cell cell = cells.get(key);
+        if (cell == null) {
+            cell = new Cell();
+            cells.put(key, cell);
+        }
+        if (cell.add(item)) {
+            size++;
+        }
+    }
+
+    public void remove(Item item) {
+        if (item == null) return;
+        LongObjectMap<Cell> cells = cellsOf(item.getWorld(), false);
+        if (cells == null) return;
+        item.getLocation(scratch);
+        Cell cell = cells.get(ChunkKey.ofPosition(scratch.getX(), scratch.getZ()));
+        if (cell != null && cell.remove(item)) {
+            size--;
+        }
+        // Otherwise the item is filed under a chunk it has since left; the stale entry
+        // is pruned the next time that cell is read.
+    }
+
+    public Cell cell(World world, int chunkX, int chunkZ) {
+        LongObjectMap<Cell> cells = cellsOf(world, false);
+        return cells == null ? null : cells.get(ChunkKey.pack(chunkX, chunkZ));
+    }
+
+    // Finds an item within the given box around the origin whose stack is similar to
+    // the origin's and that can absorb it without exceeding the max stack size.
+    public Item findMergeCandidate(Item origin, double radius) {
+        ItemStack originStack = origin.getItemStack();
+        int originAmount = originStack.getAmount();
+        World world = origin.getWorld();
+        LongObjectMap<Cell> cells = cellsOf(world, false);
+        if (cells == null) return null;
+
+        origin.getLocation(scratch);
+        double ox = scratch.getX(), oy = scratch.getY(), oz = scratch.getZ();
+        int minChunkX = (int) Math.floor(ox - radius) >> 4;
+        int maxChunkX = (int) Math.floor(ox + radius) >> 4;
+        int minChunkZ = (int) Math.floor(oz - radius) >> 4;
+        int maxChunkZ = (int) Math.floor(oz + radius) >> 4;
+
+        for (int cx = minChunkX; cx <= maxChunkX; cx++) {
+            for (int cz = minChunkZ; cz <= maxChunkZ; cz++) {
+                long key = ChunkKey.pack(cx, cz);
+                Cell cell = cells.get(key);
+                if (cell == null) continue;
+                int i = 0;
+                while (i < cell.size) {
+                    Item candidate = cell.items[i];
+                    if (!candidate.isValid()) {
+                        cell.removeAt(i);
+                        size--;
+                        continue;
+                    }
+                    candidate.getLocation(scratch);
+                    long actualKey = ChunkKey.ofPosition(scratch.getX(), scratch.getZ());
+                    if (actualKey != key) {
+                        cell.removeAt(i);
+                        refile(cells, actualKey, candidate);
+                        continue;
+                    }
+                    i++;
+                    if (candidate == origin) continue;
+                    if (Math.abs(scratch.getX() - ox) > radius
+                            || Math.abs(scratch.getY() - oy) > radius
+                            || Math.abs(scratch.getZ() - oz) > radius) {
+                        continue;
+                    }
+                    ItemStack stack = candidate.getItemStack();
+                    if (stack.getAmount() + originAmount <= stack.getMaxStackSize()
+                            && stack.isSimilar(originStack)) {
+                        return candidate;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    // Visits every indexed item in the world. Dead entries are pruned before the
+    // visitor sees them; the visitor may remove the item it is given.
+    public int sweep(World world, ItemVisitor visitor) {
+        LongObjectMap<Cell> cells = cellsOf(world, false);
+        if (cells == null) return 0;
+        int removed = 0;
+        for (int slot = 0; slot < cells.capacity(); slot++) {
+            Cell cell = cells.valueAt(slot);
+            if (cell != null) {
+                removed += sweep(cell, visitor);
+            }
+        }
+        return removed;
+    }
+
+    // Same as sweep(World, ItemVisitor) but limited to the items filed under one chunk
+    public int sweepChunk(World world, int chunkX, int chunkZ, ItemVisitor visitor) {
+        Cell cell = cell(world, chunkX, chunkZ);
+        return cell == null ? 0 : sweep(cell, visitor);
+    }
+
+    private int sweep(Cell cell, ItemVisitor visitor) {
+        int removed = 0;
+        int i = 0;
+        while (i < cell.size) {
+            Item item = cell.items[i];
+            if (!item.isValid()) {
+                cell.removeAt(i);
+                size--;
+            } else if (visitor.visit(item)) {
+                cell.removeAt(i);
+                size--;
+                removed++;
+            } else {
+                i++;
+            }
+        }
+        return removed;
+    }
+
+    private void refile(LongObjectMap<Cell> cells, long key, Item item) {
+        Cell target = cells.get(key);
+        if (target == null) {
+            target = new Cell();
+            cells.put(key, target);
+        }
+        if (!target.add(item)) {
+            size--; // Was already filed there as well
+        }
+    }
+
+    private LongObjectMap<Cell> cellsOf(World world, boolean create) {
+        LongObjectMap<Cell> cells = worlds.get(world.getUID());
+        if (cells == null && create) {
+            cells = new LongObjectMap<>(256);
+            worlds.put(world.getUID(), cells);
+        }
+        return cells;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onItemSpawn(ItemSpawnEvent event) {
+        add(event.getEntity());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onItemDespawn(ItemDespawnEvent event) {
+        remove(event.getEntity());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onItemMerge(ItemMergeEvent event) {
+        remove(event.getEntity());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onItemPickup(EntityPickupItemEvent event) {
+        // Partial pickups leave the item on the ground with the remainder
+        if (event.getRemaining() == 0) {
+            remove(event.getItem());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onEntitiesLoad(EntitiesLoadEvent event) {
+        for (Entity entity : event.getEntities()) {
+            if (entity instanceof Item) {
+                add((Item) entity);
+            }
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkUnload(ChunkUnloadEvent event) {
+        LongObjectMap<Cell> cells = cellsOf(event.getWorld(), false);
+        if (cells == null) return;
+        Cell cell = cells.remove(ChunkKey.pack(event.getChunk().getX(), event.getChunk().getZ()));
+        if (cell != null) {
+            size -= cell.size;
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        LongObjectMap<Cell> cells = worlds.remove(event.getWorld().getUID());
+        if (cells == null) return;
+        for (int slot = 0; slot < cells.capacity(); slot++) {
+            Cell cell = cells.valueAt(slot);
+            if (cell != null) {
+                size -= cell.size;
+            }
+        }
+    }
+}
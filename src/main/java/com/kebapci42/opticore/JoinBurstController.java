@@ -0,0 +1,183 @@
+package com.kebapci42.opticore;
+
+import org.bukkit.ChatColor;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerLoginEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+
+// Spreads the chunk load of a wave of joins (restarts, events) over time.
+//
+// Join times are kept for the burst window; once the number of joins in the window
+// reaches the threshold, every player who joins starts at a reduced personal view
+// distance that ramps linearly up to the world's distance over their first
+// ramp-seconds, so chunk sends and generation for the wave arrive in steps instead of
+// all in the same ticks. Optionally, logins are turned away with a retry message while
+// a burst coincides with p95 MSPT over budget. Per-player distances are Paper API, so
+// the controller only starts where Player#setViewDistance exists. Main thread only.
+class JoinBurstController implements Listener {
+    private final OptiCore plugin;
+    private final ArrayDeque<Long> recentJoins = new ArrayDeque<>();
+    // Players still ramping, by join time
+    private final Map<UUID, Long> playerJoinTimes = new HashMap<>();
+    private final Map<UUID, Integer> appliedDistance = new HashMap<>();
+    private boolean started;
+    private long burstUntil;
+    private long bursts;
+    private long ramped;
+    private long loginsDeferred;
+
+    JoinBurstController(OptiCore plugin) {
+        this.plugin = plugin;
+    }
+
+    void start() {
+        if (!OptiCore.hasMethod(Player.class, "setViewDistance", int.class)) {
+            plugin.getLogger().info("Join burst smoothing needs Player#setViewDistance (Paper) - disabled");
+            return;
+        }
+        started = true;
+        plugin.getServer().getPluginManager().registerEvents(this, plugin);
+        new BukkitRunnable() {
+            @Override
+            public void run() {
+                ramp();
+            }
+        }.runTaskTimer(plugin, 20L, 20L);
+    }
+
+    // Players still ramping get the world's distance back
+    void stop() {
+        for (UUID id : playerJoinTimes.keySet()) {
+            Player player = plugin.getServer().getPlayer(id);
+            if (player != null) {
+                player.setViewDistance(-1);
+            }
+        }
+        playerJoinTimes.clear();
+        appliedDistance.clear();
+    }
+
+    boolean isStarted() {
+        return started;
+    }
+
+    boolean isBursting() {
+        return System.currentTimeMillis() < burstUntil;
+    }
+
+    int getRamping() {
+        return playerJoinTimes.size();
+    }
+
+    long getBursts() {
+        return bursts;
+    }
+
+    long getRamped() {
+        return ramped;
+    }
+
+    long getLoginsDeferred() {
+        return loginsDeferred;
+    }
+
+    @EventHandler(priority = EventPriority.HIGH)
+    public void onPlayerLogin(PlayerLoginEvent event) {
+        Settings settings = plugin.getSettings();
+        if (!settings.joinBurstEnabled || !settings.joinBurstDenyLogins) return;
+        if (event.getResult() != PlayerLoginEvent.Result.ALLOWED || !isBursting()) return;
+        if (event.getPlayer().hasPermission("opticore.admin")) return;
+        double p95 = plugin.getPerformanceMonitor().getTickSampler().getWindowPercentileMillis(95);
+        if (p95 <= settings.joinBurstDenyAboveMspt) return;
+        loginsDeferred++;
+        plugin.getActionCounters().increment(ActionCounters.Action.LOGINS_DEFERRED);
+        event.disallow(PlayerLoginEvent.Result.KICK_OTHER, ChatColor.translateAlternateColorCodes('&',
+            settings.joinBurstDenyMessage.replace("{seconds}", String.valueOf(settings.joinBurstWindowSeconds))));
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        Settings settings = plugin.getSettings();
+        if (!settings.joinBurstEnabled) return;
+        long now = System.currentTimeMillis();
+        long windowMillis = settings.joinBurstWindowSeconds * 1000L;
+        while (!recentJoins.isEmpty() && now - recentJoins.peekFirst() > windowMillis) {
+            recentJoins.pollFirst();
+        }
+        recentJoins.addLast(now);
+        if (recentJoins.size() >= settings.joinBurstThreshold) {
+            if (!isBursting()) {
+                bursts++;
+                plugin.getLogger().info(recentJoins.size() + " joins in " + settings.joinBurstWindowSeconds
+                    + "s - ramping view distance for new players");
+            }
+            // The burst lasts until a full window passes without reaching the threshold again
+            burstUntil = now + windowMillis;
+        }
+        if (!isBursting()) return;
+
+        Player player = event.getPlayer();
+        int target = player.getWorld().getViewDistance();
+        if (settings.joinBurstStartDistance >= target) return;
+        playerJoinTimes.put(player.getUniqueId(), now);
+        setDistance(player, settings.joinBurstStartDistance);
+        ramped++;
+        plugin.getActionCounters().increment(ActionCounters.Action.JOIN_RAMPS);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        playerJoinTimes.remove(event.getPlayer().getUniqueId());
+        appliedDistance.remove(event.getPlayer().getUniqueId());
+    }
+
+    // Once a second: move every ramping player to their distance for the time since
+    // joining, and hand them back to the world's distance at the end of the ramp
+    private void ramp() {
+        if (playerJoinTimes.isEmpty()) return;
+        Settings settings = plugin.getSettings();
+        long now = System.currentTimeMillis();
+        double rampMillis = settings.joinBurstRampSeconds * 1000.0;
+        Iterator<Map.Entry<UUID, Long>> it = playerJoinTimes.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<UUID, Long> entry = it.next();
+            Player player = plugin.getServer().getPlayer(entry.getKey());
+            if (player == null) {
+                appliedDistance.remove(entry.getKey());
+                it.remove();
+                continue;
+            }
+            // The world's distance may have been stepped down by the view distance controller meanwhile
+            int target = player.getWorld().getViewDistance();
+            double progress = (now - entry.getValue()) / rampMillis;
+            int distance = settings.joinBurstStartDistance
+                + (int) ((target - settings.joinBurstStartDistance) * Math.min(1.0, progress));
+            if (progress >= 1.0 || distance >= target) {
+                // -1 hands the player back to the world's distance, so later world changes apply again
+                player.setViewDistance(-1);
+                appliedDistance.remove(entry.getKey());
+                it.remove();
+                continue;
+            }
+            setDistance(player, distance);
+        }
+    }
+
+    private void setDistance(Player player, int distance) {
+        Integer previous = appliedDistance.put(player.getUniqueId(), distance);
+        if (previous == null || previous != distance) {
+            player.setViewDistance(distance);
+        }
+    }
+}
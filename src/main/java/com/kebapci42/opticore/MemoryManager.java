@@ -0,0 +1,224 @@
+package com.kebapci42.opticore;
+
+import com.kebapci42.opticore.util.DoubleRingBuffer;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.GcInfo;
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Memory pressure tracking built on the JVM's GC notifications instead of System.gc().
+//
+// Every collection reports its pause time and per-pool usage before and after. From
+// that we keep the old-generation occupancy right after GC (the only number that says
+// whether the live set is actually growing), the allocation rate between collections
+// and a window of recent pause times. Old-gen pools also get a collection-usage
+// threshold so the JVM tells us as soon as a collection leaves them too full. The
+// response is always to shed load on the main thread, never to force a collection.
+class MemoryManager {
+    private static final int PAUSE_HISTORY = 64;
+
+    private final OptiCore plugin;
+    private final List<MemoryPoolMXBean> oldGenPools = new ArrayList<>();
+    private final List<NotificationEmitter> emitters = new ArrayList<>();
+    private final NotificationListener gcListener = this::onNotification;
+    private final DoubleRingBuffer pauseHistory = new DoubleRingBuffer(PAUSE_HISTORY, PAUSE_HISTORY);
+    private final double[] pauseScratch = new double[PAUSE_HISTORY];
+    private volatile double oldGenOccupancy;
+    private volatile double allocationRate; // Bytes per second between the last two collections
+    private volatile long lastPauseMillis;
+    private volatile boolean sheddingRequested;
+    private long lastYoungAfter = -1;
+    private long lastGcEnd = -1;
+    private long lastShed = 0;
+
+    public MemoryManager(OptiCore plugin) {
+        this.plugin = plugin;
+    }
+
+    public void start() {
+        double threshold = plugin.getSettings().memoryShedThreshold;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (isOldGen(pool)) {
+                oldGenPools.add(pool);
+                long max = pool.getUsage().getMax();
+                if (max > 0) {
+                    pool.setCollectionUsageThreshold((long) (max * threshold));
+                }
+            }
+        }
+        Object memoryBean = ManagementFactory.getMemoryMXBean();
+        if (memoryBean instanceof NotificationEmitter) {
+            register((NotificationEmitter) memoryBean);
+        }
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (gc instanceof NotificationEmitter) {
+                register((NotificationEmitter) gc);
+            }
+        }
+    }
+
+    public void stop() {
+        for (NotificationEmitter emitter : emitters) {
+            try {
+                emitter.removeNotificationListener(gcListener);
+            } catch (Exception ignored) {
+                // Already removed
+            }
+        }
+        emitters.clear();
+    }
+
+    private void register(NotificationEmitter emitter) {
+        emitter.addNotificationListener(gcListener, null, null);
+        emitters.add(emitter);
+    }
+
+    // Old generation = heap pools that support collection usage thresholds and are not
+    // a young space (G1 Old Gen, PS Old Gen, Tenured Gen, ZHeap, ZGC Old Generation...)
+    private static boolean isOldGen(MemoryPoolMXBean pool) {
+        if (pool.getType() != MemoryType.HEAP || !pool.isCollectionUsageThresholdSupported()) return false;
+        String name = pool.getName();
+        return !name.contains("Eden") && !name.contains("Survivor") && !name.contains("Young");
+    }
+
+    // Runs on a JMX notification thread
+    private void onNotification(Notification notification, Object handback) {
+        String type = notification.getType();
+        if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(type)) {
+            sheddingRequested = true;
+        } else if (GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(type)) {
+            recordCollection(GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData()));
+        }
+    }
+
+    private synchronized void recordCollection(GarbageCollectionNotificationInfo info) {
+        GcInfo gcInfo = info.getGcInfo();
+        // Concurrent collectors report whole cycles, not stop-the-world pauses
+        String collector = info.getGcName();
+        if (!collector.contains("Cycles") && !collector.contains("Concurrent")) {
+            lastPauseMillis = gcInfo.getDuration();
+            pauseHistory.add(gcInfo.getDuration());
+        }
+
+        Map<String, MemoryUsage> before = gcInfo.getMemoryUsageBeforeGc();
+        Map<String, MemoryUsage> after = gcInfo.getMemoryUsageAfterGc();
+        long youngBefore = 0, youngAfter = 0, oldUsed = 0, oldMax = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != MemoryType.HEAP) continue;
+            MemoryUsage usageBefore = before.get(pool.getName());
+            MemoryUsage usageAfter = after.get(pool.getName());
+            if (usageBefore == null || usageAfter == null) continue;
+            if (oldGenPools.contains(pool)) {
+                // Young collections never collect the old pool, so its usage after them only
+                // grows with promotion. Collection usage is what the last collection that
+                // actually covered the pool (major, mixed or full) left behind.
+                MemoryUsage collected = pool.getCollectionUsage();
+                if (collected != null && collected.getUsed() > 0) {
+                    oldUsed += collected.getUsed();
+                    oldMax += collected.getMax() > 0 ? collected.getMax() : collected.getCommitted();
+                }
+            } else {
+                youngBefore += usageBefore.getUsed();
+                youngAfter += usageAfter.getUsed();
+            }
+        }
+        if (oldMax > 0) {
+            oldGenOccupancy = (double) oldUsed / oldMax;
+        }
+        // Everything allocated since the previous collection passed through the young pools
+        if (lastYoungAfter >= 0 && gcInfo.getStartTime() > lastGcEnd) {
+            long allocated = Math.max(0, youngBefore - lastYoungAfter);
+            allocationRate = allocated * 1000.0 / (gcInfo.getStartTime() - lastGcEnd);
+        }
+        lastYoungAfter = youngAfter;
+        lastGcEnd = gcInfo.getEndTime();
+    }
+
+    public double getOldGenOccupancy() {
+        return oldGenOccupancy;
+    }
+
+    public double getAllocationRate() {
+        return allocationRate;
+    }
+
+    public double getAveragePauseMillis() {
+        return pauseHistory.average(0, 0.0);
+    }
+
+    public double getMaxPauseMillis() {
+        return pauseHistory.max(0, 0.0);
+    }
+
+    // Main thread: decide whether memory pressure warrants shedding load
+    public void evaluatePressure() {
+        Settings settings = plugin.getSettings();
+        long now = System.currentTimeMillis();
+        if (now - lastShed < settings.memoryShedCooldownMillis) return;
+
+        double occupancy = oldGenOccupancy;
+        double averagePause = getAveragePauseMillis();
+        boolean thresholdCrossed = sheddingRequested;
+        sheddingRequested = false;
+
+        boolean severe = occupancy > settings.memoryAggressiveThreshold;
+        boolean pressured = severe || thresholdCrossed
+            || occupancy > settings.memoryShedThreshold
+            || averagePause > settings.memoryMaxPauseMillis;
+        if (!pressured) return;
+
+        lastShed = now;
+        plugin.getLogger().warning(String.format(
+            "Memory pressure: old gen %.1f%% after GC, avg pause %.1fms, allocating %.1fMB/s - shedding load%s",
+            occupancy * 100, averagePause, allocationRate / 1048576, severe ? " aggressively" : ""));
+        plugin.getActionCounters().increment(ActionCounters.Action.MEMORY_SHEDS);
+        plugin.getAdaptiveOptimizer().shedLoad(severe);
+    }
+
+    public void sendMemoryReport(CommandSender sender) {
+        Runtime runtime = Runtime.getRuntime();
+        long used = (runtime.totalMemory() - runtime.freeMemory()) / 1048576;
+        long max = runtime.maxMemory() / 1048576;
+
+        sender.sendMessage(ChatColor.AQUA + "======== Memory Report ========");
+        sender.sendMessage(ChatColor.WHITE + "Heap: " + ChatColor.YELLOW + used + "MB" + ChatColor.GRAY + " / " + max + "MB");
+        sender.sendMessage(ChatColor.WHITE + "Old gen after GC: " + ChatColor.YELLOW + String.format("%.1f%%", oldGenOccupancy * 100));
+        sender.sendMessage(ChatColor.WHITE + "Allocation rate: " + ChatColor.YELLOW + String.format("%.1fMB/s", allocationRate / 1048576));
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != MemoryType.HEAP) continue;
+            MemoryUsage usage = pool.getUsage();
+            MemoryUsage afterGc = pool.getCollectionUsage();
+            sender.sendMessage(ChatColor.WHITE + pool.getName() + ": " + ChatColor.YELLOW + usage.getUsed() / 1048576 + "MB"
+                + ChatColor.GRAY + " used, " + usage.getCommitted() / 1048576 + "MB committed"
+                + (usage.getMax() > 0 ? ", " + usage.getMax() / 1048576 + "MB max" : "")
+                + (afterGc != null ? ", " + afterGc.getUsed() / 1048576 + "MB after GC" : ""));
+        }
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            sender.sendMessage(ChatColor.WHITE + gc.getName() + ": " + ChatColor.YELLOW + gc.getCollectionCount()
+                + ChatColor.GRAY + " collections, " + gc.getCollectionTime() + "ms total");
+        }
+        long pauses = Math.min(pauseHistory.count(), PAUSE_HISTORY);
+        if (pauses > 0) {
+            sender.sendMessage(ChatColor.WHITE + "Recent pauses (" + pauses + "): " + ChatColor.YELLOW + String.format(
+                "last %dms, avg %.1fms, p95 %.0fms, max %.0fms",
+                lastPauseMillis, getAveragePauseMillis(),
+                pauseHistory.percentile(0, 95, pauseScratch, 0.0),
+                getMaxPauseMillis()));
+        }
+        sender.sendMessage(ChatColor.AQUA + "==============================");
+    }
+}
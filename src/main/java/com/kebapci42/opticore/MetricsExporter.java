@@ -0,0 +1,243 @@
+package com.kebapci42.opticore;
+
+import com.kebapci42.opticore.util.LogHistogram;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryUsage;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Prometheus text-format endpoint on the JDK's built-in HTTP server.
+//
+// Everything runs on one exporter thread: each published MetricsSnapshot is rendered
+// there into a byte array, and scrapes just write the latest array. The main thread
+// only captures the snapshot (which it does anyway for /opticore stats) and hands it
+// over, so scrape frequency has no effect on tick time.
+class MetricsExporter {
+    // MSPT histogram bucket bounds in milliseconds
+    private static final double[] MSPT_BOUNDS = {5, 10, 20, 30, 40, 50, 60, 75, 100, 150, 200, 300, 500, 1000};
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final OptiCore plugin;
+    private HttpServer server;
+    private ExecutorService executor;
+    private volatile byte[] rendered = new byte[0];
+
+    MetricsExporter(OptiCore plugin) {
+        this.plugin = plugin;
+    }
+
+    void start(String bindAddress, int port) {
+        try {
+            server = HttpServer.create(new InetSocketAddress(bindAddress, port), 0);
+        } catch (IOException e) {
+            plugin.getLogger().warning("Metrics exporter could not bind " + bindAddress + ":" + port + " - " + e.getMessage());
+            return;
+        }
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "OptiCore-Metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/metrics", this::serve);
+        server.start();
+        plugin.getLogger().info("Metrics exporter listening on http://" + bindAddress + ":" + port + "/metrics");
+    }
+
+    void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    // Main thread: hand the new snapshot to the exporter thread for rendering
+    void publish(MetricsSnapshot snapshot) {
+        ExecutorService target = executor;
+        if (target == null) return;
+        try {
+            target.execute(() -> rendered = render(snapshot).getBytes(StandardCharsets.UTF_8));
+        } catch (RuntimeException ignored) {
+            // Exporter shutting down
+        }
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = rendered;
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private String render(MetricsSnapshot snapshot) {
+        StringBuilder out = new StringBuilder(4096);
+
+        gauge(out, "opticore_tps", "Server TPS (1 minute average)");
+        sample(out, "opticore_tps", null, snapshot.tps);
+        gauge(out, "opticore_mspt", "Mean tick time over the last second in milliseconds");
+        sample(out, "opticore_mspt", null, snapshot.mspt);
+
+        TickSampler sampler = plugin.getPerformanceMonitor().getTickSampler();
+        LogHistogram window = sampler.getLastWindow();
+        summary(out, "opticore_mspt_window", "Tick time percentiles over the last sample window in milliseconds");
+        for (double percentile : new double[] {50, 95, 99}) {
+            sample(out, "opticore_mspt_window", "quantile=\"" + percentile / 100 + "\"",
+                window.getValueAtPercentile(percentile) / 1000.0);
+        }
+        sample(out, "opticore_mspt_window_sum", null, window.getMean() * window.getTotalCount() / 1000.0);
+        sample(out, "opticore_mspt_window_count", null, window.getTotalCount());
+        renderHistogram(out, sampler.getLifetime());
+
+        gauge(out, "opticore_entities", "Loaded entities per world");
+        gauge(out, "opticore_chunks", "Loaded chunks per world");
+        gauge(out, "opticore_players", "Players per world");
+        for (int i = 0; i < snapshot.worldNames.length; i++) {
+            String world = "world=\"" + escape(snapshot.worldNames[i]) + "\"";
+            sample(out, "opticore_entities", world, snapshot.worldEntities[i]);
+            sample(out, "opticore_chunks", world, snapshot.worldChunks[i]);
+            sample(out, "opticore_players", world, snapshot.worldPlayers[i]);
+        }
+        if (snapshot.tileEntities >= 0) {
+            gauge(out, "opticore_tile_entities", "Loaded tile entities across all worlds");
+            sample(out, "opticore_tile_entities", null, snapshot.tileEntities);
+        }
+        gauge(out, "opticore_indexed_items", "Dropped items tracked by the item index");
+        sample(out, "opticore_indexed_items", null, snapshot.trackedItems);
+        if (snapshot.cpuLoad >= 0) {
+            gauge(out, "opticore_process_cpu_percent", "Process CPU load across all cores");
+            sample(out, "opticore_process_cpu_percent", null, snapshot.cpuLoad);
+        }
+
+        gauge(out, "opticore_memory_pool_used_bytes", "Current memory pool usage");
+        gauge(out, "opticore_memory_pool_committed_bytes", "Committed memory per pool");
+        gauge(out, "opticore_memory_pool_max_bytes", "Maximum memory per pool");
+        gauge(out, "opticore_memory_pool_after_gc_bytes", "Pool usage after the most recent collection");
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            String label = "pool=\"" + escape(pool.getName()) + "\"";
+            MemoryUsage usage = pool.getUsage();
+            sample(out, "opticore_memory_pool_used_bytes", label, usage.getUsed());
+            sample(out, "opticore_memory_pool_committed_bytes", label, usage.getCommitted());
+            sample(out, "opticore_memory_pool_max_bytes", label, usage.getMax());
+            MemoryUsage afterGc = pool.getCollectionUsage();
+            if (afterGc != null) {
+                sample(out, "opticore_memory_pool_after_gc_bytes", label, afterGc.getUsed());
+            }
+        }
+
+        MemoryManager memory = plugin.getMemoryManager();
+        gauge(out, "opticore_old_gen_occupancy_ratio", "Old generation occupancy after the most recent collection");
+        sample(out, "opticore_old_gen_occupancy_ratio", null, memory.getOldGenOccupancy());
+        gauge(out, "opticore_allocation_rate_bytes_per_second", "Allocation rate between the last two collections");
+        sample(out, "opticore_allocation_rate_bytes_per_second", null, memory.getAllocationRate());
+        gauge(out, "opticore_gc_pause_recent_avg_ms", "Average of recent stop-the-world GC pauses");
+        sample(out, "opticore_gc_pause_recent_avg_ms", null, memory.getAveragePauseMillis());
+        gauge(out, "opticore_gc_pause_recent_max_ms", "Longest recent stop-the-world GC pause");
+        sample(out, "opticore_gc_pause_recent_max_ms", null, memory.getMaxPauseMillis());
+        counter(out, "opticore_gc_collections_total", "Collections per collector");
+        counter(out, "opticore_gc_time_seconds_total", "Time spent collecting per collector");
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            String label = "collector=\"" + escape(gc.getName()) + "\"";
+            sample(out, "opticore_gc_collections_total", label, gc.getCollectionCount());
+            sample(out, "opticore_gc_time_seconds_total", label, gc.getCollectionTime() / 1000.0);
+        }
+
+        ActionCounters actions = plugin.getActionCounters();
+        for (ActionCounters.Action action : ActionCounters.Action.values()) {
+            String name = "opticore_" + action.metricName + "_total";
+            counter(out, name, action.help);
+            sample(out, name, null, actions.get(action));
+        }
+        CullingEngine culling = plugin.getCullingEngine();
+        counter(out, "opticore_culling_sweeps_total", "Completed culling sweeps");
+        sample(out, "opticore_culling_sweeps_total", null, culling.getSweepsCompleted());
+        counter(out, "opticore_items_culled_total", "Items removed by culling sweeps");
+        sample(out, "opticore_items_culled_total", null, culling.getTotalItemsRemoved());
+        counter(out, "opticore_mobs_throttled_total", "Mobs whose AI was disabled by culling sweeps");
+        sample(out, "opticore_mobs_throttled_total", null, culling.getTotalMobsThrottled());
+
+        gauge(out, "opticore_snapshot_capture_seconds", "Main-thread cost of the last metrics snapshot");
+        sample(out, "opticore_snapshot_capture_seconds", null, snapshot.captureNanos / 1e9);
+        return out.toString();
+    }
+
+    // Cumulative buckets are derived from the log histogram; a log bucket straddling a
+    // bound is counted below it, an error of at most 1/32 of the bound
+    private static void renderHistogram(StringBuilder out, LogHistogram histogram) {
+        String name = "opticore_tick_duration_ms";
+        out.append("# HELP ").append(name).append(" Tick durations since startup\n");
+        out.append("# TYPE ").append(name).append(" histogram\n");
+        int bucket = 0;
+        long cumulative = 0;
+        for (double bound : MSPT_BOUNDS) {
+            long boundMicros = (long) (bound * 1000);
+            while (bucket < histogram.bucketCount() && histogram.lowerBound(bucket) <= boundMicros) {
+                cumulative += histogram.countAt(bucket++);
+            }
+            sample(out, name + "_bucket", "le=\"" + bound + "\"", cumulative);
+        }
+        sample(out, name + "_bucket", "le=\"+Inf\"", histogram.getTotalCount());
+        sample(out, name + "_sum", null, histogram.getMean() * histogram.getTotalCount() / 1000.0);
+        sample(out, name + "_count", null, histogram.getTotalCount());
+    }
+
+    private static void gauge(StringBuilder out, String name, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" gauge\n");
+    }
+
+    private static void counter(StringBuilder out, String name, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" counter\n");
+    }
+
+    private static void summary(StringBuilder out, String name, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" summary\n");
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (labels != null) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ');
+        // The exposition format spells non-finite values +Inf, -Inf and NaN
+        if (Double.isNaN(value)) {
+            out.append("NaN");
+        } else if (Double.isInfinite(value)) {
+            out.append(value > 0 ? "+Inf" : "-Inf");
+        } else if (value == (long) value) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+
+    private static String escape(String label) {
+        return label.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,112 @@
+package com.kebapci42.opticore;
+
+import com.sun.management.OperatingSystemMXBean;
+import org.bukkit.World;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+// Immutable server metrics captured on the main thread and published through a
+// single volatile reference (see MetricsCollector), so readers on any thread see a
+// consistent set of values without locks or boxing.
+//
+// Capture reads counters rather than scanning: Paper keeps per-world entity, tile
+// entity, chunk and player counts. Other servers fall back to list sizes, which still
+// allocate but at least happen on the thread that owns the world.
+final class MetricsSnapshot {
+    private static final OperatingSystemMXBean OS_BEAN = ManagementFactory.getPlatformMXBean(OperatingSystemMXBean.class);
+
+    static final MetricsSnapshot EMPTY = new MetricsSnapshot(0, 20.0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+        new String[0], new int[0], new int[0], new int[0]);
+
+    final long timestamp;
+    final double tps;
+    final double mspt;            // Mean over the last second
+    final double msptP95;         // Last completed TickSampler window
+    final long memoryUsed;
+    final long memoryMax;
+    final double oldGenOccupancy; // After the most recent GC
+    final int entities;
+    final int tileEntities;       // -1 when the server has no cheap count
+    final int chunks;
+    final int players;
+    final int trackedItems;
+    final double cpuLoad;         // Percent of all cores, negative if unavailable
+    final long captureNanos;
+    // Per-world breakdown, indexed alike; never modified after capture
+    final String[] worldNames;
+    final int[] worldEntities;
+    final int[] worldChunks;
+    final int[] worldPlayers;
+
+    private MetricsSnapshot(long timestamp, double tps, double mspt, double msptP95, long memoryUsed, long memoryMax,
+                            double oldGenOccupancy, int entities, int tileEntities, int chunks, int players,
+                            int trackedItems, double cpuLoad, long captureNanos,
+                            String[] worldNames, int[] worldEntities, int[] worldChunks, int[] worldPlayers) {
+        this.timestamp = timestamp;
+        this.tps = tps;
+        this.mspt = mspt;
+        this.msptP95 = msptP95;
+        this.memoryUsed = memoryUsed;
+        this.memoryMax = memoryMax;
+        this.oldGenOccupancy = oldGenOccupancy;
+        this.entities = entities;
+        this.tileEntities = tileEntities;
+        this.chunks = chunks;
+        this.players = players;
+        this.trackedItems = trackedItems;
+        this.cpuLoad = cpuLoad;
+        this.captureNanos = captureNanos;
+        this.worldNames = worldNames;
+        this.worldEntities = worldEntities;
+        this.worldChunks = worldChunks;
+        this.worldPlayers = worldPlayers;
+    }
+
+    // Main thread only
+    static MetricsSnapshot capture(OptiCore plugin) {
+        long start = System.nanoTime();
+        boolean paper = plugin.isPaperServer();
+        List<World> worlds = plugin.getServer().getWorlds();
+        String[] worldNames = new String[worlds.size()];
+        int[] worldEntities = new int[worlds.size()];
+        int[] worldChunks = new int[worlds.size()];
+        int[] worldPlayers = new int[worlds.size()];
+        int entities = 0, tileEntities = paper ? 0 : -1, chunks = 0;
+        for (int i = 0; i < worldNames.length; i++) {
+            World world = worlds.get(i);
+            worldNames[i] = world.getName();
+            if (paper) {
+                worldEntities[i] = world.getEntityCount();
+                worldChunks[i] = world.getChunkCount();
+                worldPlayers[i] = world.getPlayerCount();
+                tileEntities += world.getTileEntityCount();
+            } else {
+                worldEntities[i] = world.getEntities().size();
+                worldChunks[i] = world.getLoadedChunks().length;
+                worldPlayers[i] = world.getPlayers().size();
+            }
+            entities += worldEntities[i];
+            chunks += worldChunks[i];
+        }
+
+        PerformanceMonitor monitor = plugin.getPerformanceMonitor();
+        Runtime runtime = Runtime.getRuntime();
+        return new MetricsSnapshot(
+            System.currentTimeMillis(),
+            monitor.getTPS(),
+            monitor.getMsptHistory().latest(0.0),
+            monitor.getTickSampler().getWindowPercentileMillis(95),
+            runtime.totalMemory() - runtime.freeMemory(),
+            runtime.maxMemory(),
+            plugin.getMemoryManager().getOldGenOccupancy(),
+            entities,
+            tileEntities,
+            chunks,
+            plugin.getServer().getOnlinePlayers().size(),
+            plugin.getItemIndex().size(),
+            OS_BEAN.getProcessCpuLoad() * 100,
+            System.nanoTime() - start,
+            worldNames, worldEntities, worldChunks, worldPlayers);
+    }
+}
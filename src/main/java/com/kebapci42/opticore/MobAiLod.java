@@ -0,0 +1,201 @@
+package com.kebapci42.opticore;
+
+import org.bukkit.Location;
+import org.bukkit.NamespacedKey;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Mob;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.EntitiesLoadEvent;
+import org.bukkit.persistence.PersistentDataContainer;
+import org.bukkit.persistence.PersistentDataType;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// Level-of-detail for mob AI during emergencies, with a guaranteed way back.
+//
+// Mobs handed over by the aggressive culling sweep are kept in a registry and placed
+// in a tier by distance to the nearest player: PASSIVE mobs lose their goals
+// (setAware(false)) but keep physics, FROZEN mobs lose AI entirely. A budgeted task
+// walks the registry round-robin, moving mobs between tiers as players move and
+// restoring any mob a player comes near. Once the emergency clears the same walk
+// restores everything. Every throttled mob carries a persistent data tag, so mobs
+// that were unloaded or saved by a restart are found again when their chunk loads
+// and restored (or re-tiered if still engaged); mobs whose AI was already off are
+// never touched. Main thread only.
+class MobAiLod implements Listener {
+    private static final byte TIER_PASSIVE = 1;
+    private static final byte TIER_FROZEN = 2;
+
+    private final OptiCore plugin;
+    private final NamespacedKey tierKey;
+    private final PlayerProximityGrid playerGrid = new PlayerProximityGrid();
+    private final Location scratch = new Location(null, 0, 0, 0);
+    // Registry: the list gives a stable round-robin order, the map the current entity
+    // object for each UUID (a reloaded chunk hands out a new object for the same mob)
+    private final List<UUID> order = new ArrayList<>();
+    private final Map<UUID, Mob> mobs = new HashMap<>();
+    private int cursor;
+    private boolean engaged;
+    private long restored;
+
+    MobAiLod(OptiCore plugin) {
+        this.plugin = plugin;
+        this.tierKey = new NamespacedKey(plugin, "ai_tier");
+    }
+
+    void start() {
+        plugin.getServer().getPluginManager().registerEvents(this, plugin);
+        // Mobs tagged before a restart or plugin reload; nothing is engaged yet, so they are restored
+        for (World world : plugin.getServer().getWorlds()) {
+            for (Mob mob : world.getEntitiesByClass(Mob.class)) {
+                adopt(mob);
+            }
+        }
+        new BukkitRunnable() {
+            @Override
+            public void run() {
+                rotate();
+            }
+        }.runTaskTimer(plugin, 10L, 10L);
+    }
+
+    // Restore every loaded mob on shutdown; unloaded ones are restored when they load again
+    void stop() {
+        for (Mob mob : mobs.values()) {
+            if (mob.isValid()) {
+                restore(mob);
+            }
+        }
+        mobs.clear();
+        order.clear();
+    }
+
+    void engage() {
+        engaged = true;
+    }
+
+    // The emergency is over: the rotation restores all tracked mobs within its budget
+    void release() {
+        engaged = false;
+    }
+
+    boolean isEngaged() {
+        return engaged;
+    }
+
+    int getTracked() {
+        return order.size();
+    }
+
+    long getRestored() {
+        return restored;
+    }
+
+    // Called by the culling sweep for mobs far from every player. New mobs start
+    // passive; the next rotation freezes the ones that are farther out still.
+    boolean throttle(Mob mob) {
+        if (!engaged || !mob.hasAI() || !mob.isAware() || mobs.containsKey(mob.getUniqueId())) return false;
+        track(mob);
+        return apply(mob, TIER_PASSIVE);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onEntitiesLoad(EntitiesLoadEvent event) {
+        for (Entity entity : event.getEntities()) {
+            if (entity instanceof Mob) {
+                adopt((Mob) entity);
+            }
+        }
+    }
+
+    private void adopt(Mob mob) {
+        if (!mob.getPersistentDataContainer().has(tierKey, PersistentDataType.BYTE)) return;
+        if (!engaged) {
+            restore(mob);
+            return;
+        }
+        track(mob);
+    }
+
+    private void track(Mob mob) {
+        if (mobs.put(mob.getUniqueId(), mob) == null) {
+            order.add(mob.getUniqueId());
+        }
+    }
+
+    private void rotate() {
+        if (order.isEmpty()) return;
+        long deadline = System.nanoTime() + plugin.getSettings().mobAiBudgetNanos;
+        playerGrid.rebuild(plugin.getServer());
+        int visited = 0;
+        while (!order.isEmpty() && visited < order.size() && System.nanoTime() < deadline) {
+            if (cursor >= order.size()) {
+                cursor = 0;
+            }
+            UUID id = order.get(cursor);
+            Mob mob = mobs.get(id);
+            visited++;
+            if (!mob.isValid()) {
+                // Dead, or unloaded with its tag; a later load adopts it again
+                untrack(cursor, id);
+                continue;
+            }
+            byte tier = engaged ? tierOf(mob) : 0;
+            if (tier == 0) {
+                restore(mob);
+                untrack(cursor, id);
+                continue;
+            }
+            apply(mob, tier);
+            cursor++;
+        }
+    }
+
+    // Swap-remove; the swapped-in entry is visited next
+    private void untrack(int index, UUID id) {
+        mobs.remove(id);
+        int last = order.size() - 1;
+        order.set(index, order.get(last));
+        order.remove(last);
+    }
+
+    private byte tierOf(Mob mob) {
+        Settings settings = plugin.getSettings();
+        if (isPlayerNearby(mob, settings.mobAiRestoreRadius)) return 0;
+        return isPlayerNearby(mob, settings.mobAiFrozenRadius) ? TIER_PASSIVE : TIER_FROZEN;
+    }
+
+    private boolean isPlayerNearby(Mob mob, double radius) {
+        mob.getLocation(scratch);
+        return playerGrid.isPlayerNearby(mob.getWorld(), scratch.getX(), scratch.getY(), scratch.getZ(), radius);
+    }
+
+    private boolean apply(Mob mob, byte tier) {
+        PersistentDataContainer data = mob.getPersistentDataContainer();
+        Byte current = data.get(tierKey, PersistentDataType.BYTE);
+        if (current != null && current == tier) return false;
+        data.set(tierKey, PersistentDataType.BYTE, tier);
+        if (tier == TIER_FROZEN) {
+            mob.setAI(false);
+        } else {
+            mob.setAI(true);
+            mob.setAware(false);
+        }
+        return true;
+    }
+
+    private void restore(Mob mob) {
+        mob.setAI(true);
+        mob.setAware(true);
+        mob.getPersistentDataContainer().remove(tierKey);
+        restored++;
+    }
+}
@@ -0,0 +1,202 @@
+package com.kebapci42.opticore;
+
+import org.bukkit.ChatColor;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+// Predicts tick budget overruns from the MSPT trend so gentle measures can run early.
+//
+// Fed the mean MSPT once a second. The samples are smoothed with an EWMA, and a least
+// squares line through the last window of smoothed values gives the trend in ms per
+// second. When the smoothed MSPT is still under the target but the line crosses it
+// within the horizon, a warning is raised and the caller applies gentle optimizations.
+//
+// Accuracy is tracked two ways: every sample's horizon-ahead forecast is scored
+// against the smoothed MSPT once that time arrives (mean absolute error), and every
+// warning is resolved as confirmed (the target was crossed in time) or clear (it was
+// not, either a false alarm or an overrun the early measures averted). Crossings no
+// warning saw coming count as missed. The measure the optimizer chose for a warning
+// is recorded next to it and tallied per measure. Main thread writes; the report
+// fields are volatile or concurrent so /opticore analyze can read them off-thread.
+class MsptTrendPredictor {
+    private static final int RECENT_WARNINGS = 10;
+
+    private final OptiCore plugin;
+    private final int window;
+    private final int horizon;
+    private final double[] smoothed;
+    private final double[] forecasts;
+    private final ConcurrentLinkedDeque<Warning> recentWarnings = new ConcurrentLinkedDeque<>();
+    private final Map<String, Long> actionsTaken = new ConcurrentHashMap<>();
+    private long samples;
+    private double ewma;
+    private boolean over;
+    private long lastWarning;
+    private long warningDeadline = -1;
+
+    private volatile double lastEwma;
+    private volatile double lastSlope;
+    private volatile double secondsToBreach = Double.POSITIVE_INFINITY;
+    private volatile double forecastErrorSum;
+    private volatile long forecastsScored;
+    private volatile long warnings;
+    private volatile long confirmed;
+    private volatile long cleared;
+    private volatile long missed;
+
+    // Immutable; recording the action replaces the entry
+    private static final class Warning {
+        final String text;
+        final String action;
+
+        Warning(String text, String action) {
+            this.text = text;
+            this.action = action;
+        }
+    }
+
+    MsptTrendPredictor(OptiCore plugin) {
+        this.plugin = plugin;
+        Settings settings = plugin.getSettings();
+        this.window = settings.predictionWindowSeconds;
+        this.horizon = settings.predictionHorizonSeconds;
+        this.smoothed = new double[window];
+        this.forecasts = new double[horizon];
+    }
+
+    // Once a second with the mean MSPT of that second; returns true when the caller
+    // should act on a new warning
+    boolean observe(double mspt) {
+        Settings settings = plugin.getSettings();
+        double target = settings.predictionTargetMspt;
+        ewma = samples == 0 ? mspt : ewma + settings.predictionSmoothing * (mspt - ewma);
+        int slot = (int) (samples % window);
+        smoothed[slot] = ewma;
+
+        // Score the forecast made horizon seconds ago for this second
+        int forecastSlot = (int) (samples % horizon);
+        if (samples >= horizon) {
+            forecastErrorSum += Math.abs(forecasts[forecastSlot] - ewma);
+            forecastsScored++;
+        }
+        samples++;
+
+        double slope = samples >= window / 2 ? slope() : 0;
+        forecasts[forecastSlot] = ewma + slope * horizon;
+        lastEwma = ewma;
+        lastSlope = slope;
+        secondsToBreach = ewma >= target ? 0 : slope > 0 ? (target - ewma) / slope : Double.POSITIVE_INFINITY;
+
+        boolean crossed = !over && ewma >= target;
+        over = ewma >= target;
+        if (warningDeadline >= 0) {
+            if (crossed) {
+                confirmed++;
+                warningDeadline = -1;
+            } else if (samples > warningDeadline) {
+                cleared++;
+                warningDeadline = -1;
+            }
+        } else if (crossed) {
+            missed++;
+        }
+
+        if (over || secondsToBreach > horizon || slope < settings.predictionMinSlope) return false;
+        long now = System.currentTimeMillis();
+        if (now - lastWarning < settings.predictionCooldownMillis) return false;
+        lastWarning = now;
+        if (warningDeadline < 0) {
+            warnings++;
+            // Give the prediction its own horizon again as slack before calling it clear
+            warningDeadline = samples + (long) Math.ceil(secondsToBreach) + horizon;
+        }
+        String warning = String.format("%s: %.1fms rising %.2fms/s, target %.0fms in ~%.0fs",
+            new SimpleDateFormat("HH:mm:ss").format(new Date(now)), ewma, slope, target, secondsToBreach);
+        plugin.getLogger().info("Tick time trend warning - " + warning);
+        recentWarnings.addFirst(new Warning(warning, null));
+        while (recentWarnings.size() > RECENT_WARNINGS) {
+            recentWarnings.pollLast();
+        }
+        return true;
+    }
+
+    // The measure applied for the warning observe() just raised
+    void recordAction(String action) {
+        Warning latest = recentWarnings.pollFirst();
+        if (latest != null) {
+            recentWarnings.addFirst(new Warning(latest.text, action));
+        }
+        actionsTaken.merge(action, 1L, Long::sum);
+    }
+
+    // Least squares slope of the smoothed samples in the window, oldest first
+    private double slope() {
+        int n = (int) Math.min(samples, window);
+        long first = samples - n;
+        double meanX = (n - 1) / 2.0;
+        double meanY = 0;
+        for (int i = 0; i < n; i++) {
+            meanY += smoothed[(int) ((first + i) % window)];
+        }
+        meanY /= n;
+        double covariance = 0;
+        double variance = 0;
+        for (int i = 0; i < n; i++) {
+            double dx = i - meanX;
+            covariance += dx * (smoothed[(int) ((first + i) % window)] - meanY);
+            variance += dx * dx;
+        }
+        return variance == 0 ? 0 : covariance / variance;
+    }
+
+    double getSecondsToBreach() {
+        return secondsToBreach;
+    }
+
+    double getSmoothedMspt() {
+        return lastEwma;
+    }
+
+    double getSlope() {
+        return lastSlope;
+    }
+
+    // Safe to call off the main thread
+    void appendReport(StringBuilder report) {
+        report.append(ChatColor.AQUA).append("MSPT forecast: ").append(ChatColor.YELLOW)
+            .append(String.format("%.1fms, %+.2fms/s", lastEwma, lastSlope));
+        double breach = secondsToBreach;
+        if (breach == 0) {
+            report.append(ChatColor.RED).append(" - over target");
+        } else if (breach <= horizon) {
+            report.append(ChatColor.GOLD).append(String.format(" - target in ~%.0fs", breach));
+        }
+        report.append('\n');
+        long scored = forecastsScored;
+        report.append(ChatColor.WHITE).append("  ").append(horizon).append("s forecast error: ").append(ChatColor.YELLOW)
+            .append(scored == 0 ? "n/a" : String.format("%.2fms mean over %d forecasts", forecastErrorSum / scored, scored))
+            .append('\n');
+        report.append(ChatColor.WHITE).append("  Warnings: ").append(ChatColor.YELLOW).append(warnings)
+            .append(ChatColor.GRAY).append(String.format(" (%d confirmed, %d clear or averted, %d overruns missed)",
+                confirmed, cleared, missed))
+            .append('\n');
+        if (!actionsTaken.isEmpty()) {
+            report.append(ChatColor.WHITE).append("  Actions triggered: ").append(ChatColor.GRAY);
+            boolean first = true;
+            for (Map.Entry<String, Long> entry : actionsTaken.entrySet()) {
+                report.append(first ? "" : ", ").append(entry.getKey()).append(' ').append(entry.getValue());
+                first = false;
+            }
+            report.append('\n');
+        }
+        for (Warning warning : recentWarnings) {
+            // No action when the emergency path or its cooldown took the second instead
+            report.append(ChatColor.GRAY).append("  ").append(warning.text).append(" -> ")
+                .append(warning.action == null ? "no action" : warning.action).append('\n');
+        }
+    }
+}
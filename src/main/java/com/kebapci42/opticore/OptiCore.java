@@ -12,54 +12,116 @@ import org.bukkit.event.Listener;
 import org.bukkit.event.entity.ItemSpawnEvent;
 import org.bukkit.event.world.ChunkLoadEvent;
 import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerMoveEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.player.PlayerRespawnEvent;
+import org.bukkit.event.player.PlayerTeleportEvent;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.entity.EntitySpawnEvent;
+import org.bukkit.block.Block;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
-import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.ChatColor;
 import org.bukkit.Location;
+import org.bukkit.inventory.ItemStack;
+import com.kebapci42.opticore.util.ChunkKey;
+import com.kebapci42.opticore.util.DoubleRingBuffer;
+import com.kebapci42.opticore.util.LogHistogram;
 
+import java.io.File;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.stream.Collectors;
-import java.lang.management.ManagementFactory;
-import com.sun.management.OperatingSystemMXBean;
 
 public class OptiCore extends JavaPlugin implements Listener {
     
-    private FileConfiguration config;
+    private volatile Settings settings;
     private PerformanceMonitor performanceMonitor;
-    private EntityOptimizer entityOptimizer;
+    private MsptTrendPredictor trendPredictor;
+    private ItemMergeBatcher itemMergeBatcher;
+    private MobAiLod mobAiLod;
+    private SpawnGovernor spawnGovernor;
     private ChunkOptimizer chunkOptimizer;
     private MemoryManager memoryManager;
     private AdaptiveOptimizer adaptiveOptimizer;
     private MetricsCollector metricsCollector;
+    private ItemSpatialIndex itemIndex;
+    private CullingEngine cullingEngine;
+    private ViewDistanceController viewDistanceController;
+    private JoinBurstController joinBurstController;
+    private final ActionCounters actionCounters = new ActionCounters();
+    private MetricsExporter metricsExporter;
+    private TimeSeriesStore history;
+    private ActionFeedback actionFeedback;
+    private FlightRecording flightRecording;
+    private StallWatchdog stallWatchdog;
+    private PluginAttribution pluginAttribution;
+    private ChunkPregenerator pregenerator;
+    
+    private boolean paperServer;
     
     // Death spiral prevention
     private long lastEmergencyActivation = 0;
-    private long lastGarbageCollection = 0;
     private int consecutiveEmergencies = 0;
-    private final Map<UUID, Long> playerJoinTimes = new ConcurrentHashMap<>();
     
     @Override
     public void onEnable() {
         saveDefaultConfig();
-        config = getConfig();
+        settings = Settings.load(getConfig(), getLogger());
+        paperServer = hasClass("com.destroystokyo.paper.event.server.ServerTickEndEvent");
+        getLogger().info(paperServer
+            ? "Paper API detected - exact tick times from ServerTickEndEvent, advanced optimizations enabled"
+            : "Paper API not found - tick times measured from scheduler intervals");
         
         // Initialize components
+        flightRecording = new FlightRecording(this);
+        flightRecording.start();
+        itemIndex = new ItemSpatialIndex();
+        cullingEngine = new CullingEngine(this, itemIndex, settings.cullingBudgetNanos);
         performanceMonitor = new PerformanceMonitor(this);
-        entityOptimizer = new EntityOptimizer(this);
+        trendPredictor = new MsptTrendPredictor(this);
+        itemMergeBatcher = new ItemMergeBatcher(this);
+        mobAiLod = new MobAiLod(this);
+        cullingEngine.setMobThrottler(mobAiLod::throttle);
+        spawnGovernor = new SpawnGovernor(this);
         chunkOptimizer = new ChunkOptimizer(this);
         memoryManager = new MemoryManager(this);
         adaptiveOptimizer = new AdaptiveOptimizer(this);
+        actionFeedback = new ActionFeedback(this);
+        actionFeedback.load();
+        viewDistanceController = new ViewDistanceController(this);
+        joinBurstController = new JoinBurstController(this);
+        pregenerator = new ChunkPregenerator(this);
         metricsCollector = new MetricsCollector(this);
+        history = new TimeSeriesStore(this, new File(getDataFolder(), "history"));
         
         // Register events
         getServer().getPluginManager().registerEvents(this, this);
+        itemIndex.register(this);
+        performanceMonitor.getTickSampler().start();
+        itemMergeBatcher.start();
+        mobAiLod.start();
+        spawnGovernor.start();
+        if (settings.smartChunkLoading) {
+            chunkOptimizer.start();
+        }
+        viewDistanceController.start();
+        joinBurstController.start();
+        pregenerator.start();
+        memoryManager.start();
+        if (settings.historyEnabled) {
+            history.start();
+        }
+        if (settings.watchdogEnabled) {
+            stallWatchdog = new StallWatchdog(this);
+            stallWatchdog.start();
+        }
+        pluginAttribution = new PluginAttribution(this);
         
-        // Check for Paper
-        if (isPaperServer()) {
-            getLogger().info("Paper server detected - enabling advanced optimizations");
+        if (paperServer) {
             enablePaperOptimizations();
         }
         
@@ -69,18 +131,171 @@ public class OptiCore extends JavaPlugin implements Listener {
         // Integration checks
         checkIntegrations();
         
+        startMetricsExporter();
+        
+        // Last, so OptiCore's own listeners are wrapped in the first pass too
+        pluginAttribution.start();
+        
         getLogger().info("OptiCore Enhanced v2.0 enabled - Intelligent performance optimization active!");
     }
     
-    private boolean isPaperServer() {
+    @Override
+    public void onDisable() {
+        // JMX listeners outlive the plugin class loader unless removed
+        if (memoryManager != null) {
+            memoryManager.stop();
+        }
+        if (mobAiLod != null) {
+            mobAiLod.stop();
+        }
+        if (joinBurstController != null) {
+            joinBurstController.stop();
+        }
+        if (metricsExporter != null) {
+            metricsExporter.stop();
+        }
+        if (pregenerator != null) {
+            pregenerator.stop();
+        }
+        if (actionFeedback != null) {
+            actionFeedback.save();
+        }
+        if (flightRecording != null) {
+            flightRecording.stop();
+        }
+        if (stallWatchdog != null) {
+            stallWatchdog.stop();
+        }
+        if (pluginAttribution != null) {
+            // The wrappers are OptiCore classes; other plugins must not keep calling them
+            pluginAttribution.stop();
+        }
+        if (history != null) {
+            history.stop();
+        }
+    }
+    
+    private void startMetricsExporter() {
+        if (metricsExporter != null) {
+            metricsExporter.stop();
+            metricsExporter = null;
+        }
+        if (settings.exporterEnabled) {
+            metricsExporter = new MetricsExporter(this);
+            metricsExporter.start(settings.exporterBindAddress, settings.exporterPort);
+            metricsExporter.publish(metricsCollector.getSnapshot());
+        }
+    }
+    
+    // Probed once in onEnable by the tick events the plugin actually listens to;
+    // PaperConfig, the usual marker, was removed in Paper 1.19.1
+    boolean isPaperServer() {
+        return paperServer;
+    }
+    
+    static boolean hasClass(String name) {
         try {
-            Class.forName("com.destroystokyo.paper.PaperConfig");
+            Class.forName(name);
             return true;
         } catch (ClassNotFoundException e) {
             return false;
         }
     }
     
+    // For API that Paper adds to Bukkit types rather than in classes of its own
+    static boolean hasMethod(Class<?> type, String name, Class<?>... parameters) {
+        try {
+            type.getMethod(name, parameters);
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+    
+    ItemSpatialIndex getItemIndex() {
+        return itemIndex;
+    }
+    
+    PerformanceMonitor getPerformanceMonitor() {
+        return performanceMonitor;
+    }
+    
+    ChunkOptimizer getChunkOptimizer() {
+        return chunkOptimizer;
+    }
+    
+    JoinBurstController getJoinBurstController() {
+        return joinBurstController;
+    }
+    
+    ViewDistanceController getViewDistanceController() {
+        return viewDistanceController;
+    }
+    
+    CullingEngine getCullingEngine() {
+        return cullingEngine;
+    }
+    
+    Settings getSettings() {
+        return settings;
+    }
+    
+    MemoryManager getMemoryManager() {
+        return memoryManager;
+    }
+    
+    AdaptiveOptimizer getAdaptiveOptimizer() {
+        return adaptiveOptimizer;
+    }
+    
+    MetricsCollector getMetricsCollector() {
+        return metricsCollector;
+    }
+    
+    MobAiLod getMobAiLod() {
+        return mobAiLod;
+    }
+    
+    PluginAttribution getPluginAttribution() {
+        return pluginAttribution;
+    }
+    
+    StallWatchdog getStallWatchdog() {
+        return stallWatchdog;
+    }
+    
+    FlightRecording getFlightRecording() {
+        return flightRecording;
+    }
+    
+    ActionFeedback getActionFeedback() {
+        return actionFeedback;
+    }
+    
+    ChunkPregenerator getPregenerator() {
+        return pregenerator;
+    }
+    
+    TimeSeriesStore getHistory() {
+        return history;
+    }
+    
+    MsptTrendPredictor getTrendPredictor() {
+        return trendPredictor;
+    }
+    
+    SpawnGovernor getSpawnGovernor() {
+        return spawnGovernor;
+    }
+    
+    ItemMergeBatcher getItemMergeBatcher() {
+        return itemMergeBatcher;
+    }
+    
+    ActionCounters getActionCounters() {
+        return actionCounters;
+    }
+    
     private void enablePaperOptimizations() {
         // Paper-specific optimizations
         new BukkitRunnable() {
@@ -103,7 +318,7 @@ public class OptiCore extends JavaPlugin implements Listener {
         // Geyser compatibility check
         if (getServer().getPluginManager().getPlugin("Geyser-Spigot") != null) {
             getLogger().info("✓ Geyser detected - cross-platform optimizations enabled");
-            config.set("cross-platform-mode", true);
+            getConfig().set("cross-platform-mode", true);
         }
     }
     
@@ -112,31 +327,65 @@ public class OptiCore extends JavaPlugin implements Listener {
         new BukkitRunnable() {
             @Override
             public void run() {
+                performanceMonitor.recordSample();
                 double tps = performanceMonitor.getTPS();
                 long currentTime = System.currentTimeMillis();
+                Settings settings = OptiCore.this.settings;
+                // Tick intervals sit at the 50ms budget on a healthy server, so the trend
+                // is only meaningful with Paper's exact tick times
+                history.record(currentTime / 1000, tps, performanceMonitor.getMsptHistory().latest(0.0),
+                    metricsCollector.getSnapshot());
+                actionFeedback.observe(performanceMonitor.getMsptHistory().latest(0.0));
+                boolean trendWarning = settings.predictionEnabled && performanceMonitor.getTickSampler().isPrecise()
+                    && trendPredictor.observe(performanceMonitor.getMsptHistory().latest(0.0));
                 
                 // Death spiral prevention
-                if (currentTime - lastEmergencyActivation < config.getInt("emergency-cooldown", 60000)) {
+                if (currentTime - lastEmergencyActivation < settings.emergencyCooldownMillis) {
                     return; // Skip if in cooldown
                 }
                 
-                if (tps < config.getDouble("emergency-tps", 17.0)) {
+                boolean emergency;
+                if (settings.msptEmergencyTrigger) {
+                    // p95 tick time over the last sample window reacts to short stalls that
+                    // the 1-minute TPS average smooths away; map it to an equivalent TPS
+                    // so the severity bands below still apply
+                    double p95 = performanceMonitor.getTickSampler().getWindowPercentileMillis(95);
+                    emergency = p95 > settings.emergencyMspt;
+                    tps = Math.min(tps, 1000.0 / Math.max(p95, 50.0));
+                } else {
+                    emergency = tps < settings.emergencyTps;
+                }
+                
+                if (emergency) {
                     consecutiveEmergencies++;
-                    if (consecutiveEmergencies < config.getInt("max-emergency-activations", 3)) {
+                    if (consecutiveEmergencies < settings.maxEmergencyActivations) {
                         performanceMonitor.activateEmergencyMode();
+                        flightRecording.emergency("activated", tps, consecutiveEmergencies);
+                        flightRecording.requestDump(String.format("emergency at TPS %.1f", tps));
                         adaptiveOptimizer.applyEmergencyOptimizations(tps);
+                        actionCounters.increment(ActionCounters.Action.EMERGENCY_ACTIVATIONS);
                         lastEmergencyActivation = currentTime;
                     } else {
                         getLogger().warning("Emergency optimization limit reached - backing off");
+                        flightRecording.emergency("backed off", tps, consecutiveEmergencies);
+                    }
+                } else {
+                    if (trendWarning) {
+                        adaptiveOptimizer.applyPredictiveOptimizations(trendPredictor.getSecondsToBreach());
+                    }
+                    if (tps > 19.0) {
+                        if (consecutiveEmergencies > 0) {
+                            flightRecording.emergency("recovered", tps, consecutiveEmergencies);
+                        }
+                        consecutiveEmergencies = 0; // Reset counter when performance is good
+                        mobAiLod.release(); // Throttled mobs get their AI back over the next rotations
                     }
-                } else if (tps > 19.0) {
-                    consecutiveEmergencies = 0; // Reset counter when performance is good
                 }
             }
         }.runTaskTimer(this, 20L, 20L);
         
         // Gentle optimization cycle (configurable interval)
-        long optimizationInterval = config.getLong("optimization-interval", 2400L); // 2 minutes default
+        long optimizationInterval = settings.optimizationIntervalTicks; // 2 minutes default
         new BukkitRunnable() {
             @Override
             public void run() {
@@ -144,43 +393,38 @@ public class OptiCore extends JavaPlugin implements Listener {
             }
         }.runTaskTimer(this, optimizationInterval, optimizationInterval);
         
-        // Memory optimization with cooldown
+        // Memory pressure is measured by GC notifications; react to it on the main thread
         new BukkitRunnable() {
             @Override
             public void run() {
-                long currentTime = System.currentTimeMillis();
-                if (currentTime - lastGarbageCollection > config.getLong("gc-cooldown", 30000)) {
-                    memoryManager.optimizeMemory();
-                }
+                memoryManager.evaluatePressure();
             }
-        }.runTaskTimerAsynchronously(this, 600L, 600L);
+        }.runTaskTimer(this, 100L, 100L);
         
-        // Metrics collection (async)
+        // Metrics snapshot: cheap counters read on the main thread, published for any reader
+        long metricsInterval = settings.metricsIntervalTicks;
         new BukkitRunnable() {
             @Override
             public void run() {
                 metricsCollector.collectMetrics();
+                if (metricsExporter != null) {
+                    metricsExporter.publish(metricsCollector.getSnapshot());
+                }
             }
-        }.runTaskTimerAsynchronously(this, 100L, 100L);
+        }.runTaskTimer(this, metricsInterval, metricsInterval);
     }
     
-    @EventHandler(priority = EventPriority.HIGH)
+    @EventHandler(priority = EventPriority.HIGH, ignoreCancelled = true)
     public void onItemSpawn(ItemSpawnEvent event) {
-        if (config.getBoolean("optimization.merge-items", true)) {
-            // Async item merging for Paper
-            if (isPaperServer()) {
-                CompletableFuture.runAsync(() -> {
-                    entityOptimizer.mergeNearbyItems(event.getEntity());
-                });
-            } else {
-                entityOptimizer.mergeNearbyItems(event.getEntity());
-            }
+        if (settings.mergeItems) {
+            // Merged in one grouped pass at the end of the tick
+            itemMergeBatcher.enqueue(event.getEntity());
         }
     }
     
     @EventHandler
     public void onChunkLoad(ChunkLoadEvent event) {
-        if (config.getBoolean("optimization.smart-chunk-loading", true)) {
+        if (settings.smartChunkLoading && chunkOptimizer.isStarted()) {
             chunkOptimizer.onChunkLoad(event.getChunk());
         }
     }
@@ -193,9 +437,7 @@ public class OptiCore extends JavaPlugin implements Listener {
     @EventHandler
     public void onPlayerJoin(PlayerJoinEvent event) {
         Player player = event.getPlayer();
-        playerJoinTimes.put(player.getUniqueId(), System.currentTimeMillis());
-        
-        if (config.getBoolean("show-stats-on-join", true) && player.hasPermission("opticore.admin")) {
+        if (settings.showStatsOnJoin && player.hasPermission("opticore.admin")) {
             new BukkitRunnable() {
                 @Override
                 public void run() {
@@ -220,9 +462,17 @@ public class OptiCore extends JavaPlugin implements Listener {
                     sender.sendMessage(ChatColor.RED + "No permission!");
                     return true;
                 }
+                long historyRange = args.length > 1 ? TimeSeriesStore.parseDuration(args[1]) : 3600;
+                if (historyRange < 0) {
+                    sender.sendMessage(ChatColor.RED + "Usage: /opticore analyze [range, e.g. 30m, 6h, 7d]");
+                    return true;
+                }
                 sender.sendMessage(ChatColor.YELLOW + "Starting performance analysis...");
+                // Counts are captured here on the main thread; ranking and history reads happen off-thread
+                HotspotSnapshot snapshot = HotspotSnapshot.capture(this);
+                SpawnGovernor.DenialSnapshot denials = spawnGovernor.captureDenials();
                 CompletableFuture.runAsync(() -> {
-                    String report = performanceMonitor.generateDetailedReport();
+                    String report = performanceMonitor.generateDetailedReport(snapshot, denials, historyRange);
                     getServer().getScheduler().runTask(this, () -> sender.sendMessage(report));
                 });
                 return true;
@@ -244,13 +494,34 @@ public class OptiCore extends JavaPlugin implements Listener {
                 memoryManager.sendMemoryReport(sender);
                 return true;
                 
+            case "pregen":
+                if (!sender.hasPermission("opticore.admin")) {
+                    sender.sendMessage(ChatColor.RED + "No permission!");
+                    return true;
+                }
+                pregenerator.handleCommand(sender, args);
+                return true;
+                
+            case "attribution":
+                if (!sender.hasPermission("opticore.admin")) {
+                    sender.sendMessage(ChatColor.RED + "No permission!");
+                    return true;
+                }
+                pluginAttribution.handleCommand(sender, args);
+                return true;
+                
             case "reload":
                 if (!sender.hasPermission("opticore.admin")) {
                     sender.sendMessage(ChatColor.RED + "No permission!");
                     return true;
                 }
                 reloadConfig();
-                config = getConfig();
+                settings = Settings.load(getConfig(), getLogger());
+                cullingEngine.setBudgetNanos(settings.cullingBudgetNanos);
+                if (settings.smartChunkLoading) {
+                    chunkOptimizer.start(); // No-op if it is already running
+                }
+                startMetricsExporter();
                 sender.sendMessage(ChatColor.GREEN + "Configuration reloaded!");
                 return true;
         }
@@ -261,7 +532,6 @@ public class OptiCore extends JavaPlugin implements Listener {
 
 class AdaptiveOptimizer {
     private final OptiCore plugin;
-    private final Map<String, Double> optimizationWeights = new ConcurrentHashMap<>();
     private OptimizationProfile currentProfile = OptimizationProfile.BALANCED;
     
     enum OptimizationProfile {
@@ -281,34 +551,33 @@ class AdaptiveOptimizer {
         }
     }
     
-    public AdaptiveOptimizer(OptiCore plugin) {
-        this.plugin = plugin;
-        initializeWeights();
+    // Main thread only
+    OptimizationProfile getCurrentProfile() {
+        return currentProfile;
     }
     
-    private void initializeWeights() {
-        optimizationWeights.put("entities", 1.0);
-        optimizationWeights.put("chunks", 1.0);
-        optimizationWeights.put("memory", 1.0);
+    public AdaptiveOptimizer(OptiCore plugin) {
+        this.plugin = plugin;
     }
     
     public void applyEmergencyOptimizations(double currentTPS) {
         plugin.getLogger().warning("Emergency optimization triggered - TPS: " + String.format("%.2f", currentTPS));
         currentProfile = OptimizationProfile.EMERGENCY;
         
+        // View distance is stepped down by the controller, which also restores it
+        // gradually once tick times recover
+        plugin.getViewDistanceController().onEmergency();
+        
         // Progressive optimization based on severity
         if (currentTPS < 10) {
             // Critical - apply all optimizations
-            reduceViewDistance(6);
             aggressiveEntityCulling();
             unloadEmptyChunks();
         } else if (currentTPS < 15) {
             // Severe - moderate optimizations
-            reduceViewDistance(8);
             moderateEntityCulling();
         } else {
             // Mild - gentle optimizations
-            reduceViewDistance(10);
             gentleEntityCulling();
         }
         
@@ -318,163 +587,114 @@ class AdaptiveOptimizer {
             public void run() {
                 if (currentProfile == OptimizationProfile.EMERGENCY) {
                     currentProfile = OptimizationProfile.BALANCED;
-                    resetViewDistance();
                 }
             }
         }.runTaskLater(plugin, 1200L); // 60 seconds
     }
     
+    // The MSPT trend predicts an overrun: run the gentle measures now, while there is
+    // still headroom, instead of waiting for the emergency path
+    public void applyPredictiveOptimizations(double secondsToBreach) {
+        ActionFeedback.Action action = plugin.getActionFeedback().choose(
+            Arrays.asList(ActionFeedback.Action.GENTLE_CULL, ActionFeedback.Action.CHUNK_UNLOAD));
+        plugin.getLogger().info(String.format("Tick time overrun predicted in ~%.0fs - applying %s",
+            secondsToBreach, action.label));
+        plugin.getActionCounters().increment(ActionCounters.Action.PREDICTIVE_OPTIMIZATIONS);
+        plugin.getTrendPredictor().recordAction(action.label);
+        apply(action);
+    }
+    
     public void runGentleOptimization() {
         // Adaptive optimization based on current server state
-        double memoryPressure = getMemoryPressure();
-        int entityCount = getTotalEntities();
-        int chunkCount = getLoadedChunks();
+        MetricsSnapshot metrics = plugin.getMetricsCollector().getSnapshot();
+        double memoryPressure = metrics.oldGenOccupancy;
+        int entityCount = metrics.entities;
+        int chunkCount = metrics.chunks;
         
-        // Update weights based on what's causing the most load
-        if (memoryPressure > 0.7) {
-            optimizationWeights.put("memory", 1.5);
+        // The server state decides which measures are warranted; what they have
+        // recovered in the past decides which one runs (one per cycle, so each
+        // result can be measured)
+        List<ActionFeedback.Action> allowed = new ArrayList<>(3);
+        if (entityCount > plugin.getSettings().entityThreshold) {
+            allowed.add(ActionFeedback.Action.GENTLE_CULL);
         }
-        if (entityCount > plugin.getConfig().getInt("thresholds.entities", 5000)) {
-            optimizationWeights.put("entities", 1.5);
+        if (chunkCount > plugin.getSettings().chunkThreshold) {
+            allowed.add(ActionFeedback.Action.CHUNK_UNLOAD);
         }
-        if (chunkCount > plugin.getConfig().getInt("thresholds.chunks", 500)) {
-            optimizationWeights.put("chunks", 1.5);
-        }
-        
-        // Apply weighted optimizations
-        if (optimizationWeights.get("entities") > 1.2) {
-            gentleEntityCulling();
+        if (memoryPressure > 0.8) {
+            // Live set is high after GC; fewer dropped items means less to retain
+            allowed.add(ActionFeedback.Action.MODERATE_CULL);
         }
-        if (optimizationWeights.get("chunks") > 1.2) {
-            optimizeChunks();
+        if (!allowed.isEmpty()) {
+            apply(plugin.getActionFeedback().choose(allowed));
         }
-        if (optimizationWeights.get("memory") > 1.2 && memoryPressure > 0.8) {
-            System.gc();
+    }
+    
+    private void apply(ActionFeedback.Action action) {
+        switch (action) {
+            case GENTLE_CULL:
+                gentleEntityCulling();
+                break;
+            case MODERATE_CULL:
+                moderateEntityCulling();
+                break;
+            case CHUNK_UNLOAD:
+                optimizeChunks();
+                break;
+            default:
+                break;
         }
-        
-        // Decay weights over time
-        optimizationWeights.replaceAll((k, v) -> Math.max(1.0, v * 0.9));
     }
     
+    // Culling runs as budgeted sweeps on the CullingEngine rather than in this tick
     private void gentleEntityCulling() {
-        int removed = 0;
-        for (World world : plugin.getServer().getWorlds()) {
-            for (Entity entity : world.getEntities()) {
-                if (entity instanceof Item) {
-                    Item item = (Item) entity;
-                    // Only remove old items not near players
-                    if (item.getTicksLived() > 6000 && !isPlayerNearby(item.getLocation(), 32)) {
-                        item.remove();
-                        removed++;
-                    }
-                }
-            }
-        }
-        if (removed > 0) {
-            plugin.getLogger().info("Gentle optimization: removed " + removed + " old items");
-        }
+        plugin.getActionFeedback().record(ActionFeedback.Action.GENTLE_CULL);
+        // Only remove old items not near players
+        plugin.getCullingEngine().submit(plugin.getSettings().gentleCulling);
     }
     
     private void moderateEntityCulling() {
-        for (World world : plugin.getServer().getWorlds()) {
-            world.getEntities().stream()
-                .filter(e -> e instanceof Item)
-                .map(e -> (Item) e)
-                .filter(item -> item.getTicksLived() > 2400)
-                .filter(item -> !isPlayerNearby(item.getLocation(), 24))
-                .forEach(Entity::remove);
-        }
+        plugin.getActionFeedback().record(ActionFeedback.Action.MODERATE_CULL);
+        plugin.getCullingEngine().submit(plugin.getSettings().moderateCulling);
     }
     
     private void aggressiveEntityCulling() {
-        for (World world : plugin.getServer().getWorlds()) {
-            // Remove all items older than 1 minute
-            world.getEntities().stream()
-                .filter(e -> e instanceof Item)
-                .map(e -> (Item) e)
-                .filter(item -> item.getTicksLived() > 1200)
-                .forEach(Entity::remove);
-            
-            // Reduce mob AI range
-            world.getEntities().stream()
-                .filter(e -> e instanceof Mob)
-                .forEach(e -> {
-                    if (!isPlayerNearby(e.getLocation(), 48)) {
-                        ((Mob) e).setAI(false);
-                    }
-                });
-        }
+        // Remove all items older than 1 minute and throttle AI of mobs far from players
+        // until performance recovers (see MobAiLod)
+        plugin.getActionFeedback().record(ActionFeedback.Action.AGGRESSIVE_CULL);
+        plugin.getMobAiLod().engage();
+        plugin.getCullingEngine().submit(plugin.getSettings().aggressiveCulling);
     }
     
+    // Candidates come from ChunkOptimizer's coldness queue, never from a world scan
     private void optimizeChunks() {
-        for (World world : plugin.getServer().getWorlds()) {
-            Arrays.stream(world.getLoadedChunks())
-                .filter(chunk -> !isPlayerInChunk(chunk))
-                .filter(chunk -> chunk.getEntities().length < 5)
-                .forEach(chunk -> chunk.unload(true));
-        }
+        plugin.getActionFeedback().record(ActionFeedback.Action.CHUNK_UNLOAD);
+        plugin.getChunkOptimizer().queueColdChunks(plugin.getSettings().chunkUnloadBatch);
     }
     
     private void unloadEmptyChunks() {
-        for (World world : plugin.getServer().getWorlds()) {
-            Arrays.stream(world.getLoadedChunks())
-                .filter(chunk -> chunk.getEntities().length == 0)
-                .filter(chunk -> !isPlayerInChunk(chunk))
-                .forEach(chunk -> chunk.unload(false));
-        }
-    }
-    
-    private void reduceViewDistance(int distance) {
-        for (World world : plugin.getServer().getWorlds()) {
-            world.setViewDistance(distance);
-            if (plugin.isPaperServer()) {
-                world.setSimulationDistance(Math.max(4, distance - 2));
-            }
-        }
+        plugin.getActionFeedback().record(ActionFeedback.Action.CHUNK_UNLOAD);
+        plugin.getChunkOptimizer().queueColdChunks(plugin.getSettings().chunkUnloadBatch * 2);
     }
     
-    private void resetViewDistance() {
-        int defaultDistance = plugin.getConfig().getInt("default-view-distance", 10);
-        for (World world : plugin.getServer().getWorlds()) {
-            world.setViewDistance(defaultDistance);
-            if (plugin.isPaperServer()) {
-                world.setSimulationDistance(defaultDistance);
-            }
+    // Memory pressure response: free retained entities and chunks instead of forcing a GC
+    public void shedLoad(boolean severe) {
+        if (severe) {
+            aggressiveEntityCulling();
+            unloadEmptyChunks();
+            plugin.getViewDistanceController().onEmergency();
+        } else {
+            moderateEntityCulling();
+            optimizeChunks();
         }
     }
     
-    private boolean isPlayerNearby(Location loc, double radius) {
-        return loc.getWorld().getNearbyEntities(loc, radius, radius, radius).stream()
-            .anyMatch(e -> e instanceof Player);
-    }
-    
-    private boolean isPlayerInChunk(Chunk chunk) {
-        return Arrays.stream(chunk.getEntities()).anyMatch(e -> e instanceof Player);
-    }
-    
-    private double getMemoryPressure() {
-        Runtime runtime = Runtime.getRuntime();
-        return (double) (runtime.totalMemory() - runtime.freeMemory()) / runtime.maxMemory();
-    }
-    
-    private int getTotalEntities() {
-        return plugin.getServer().getWorlds().stream()
-            .mapToInt(w -> w.getEntities().size())
-            .sum();
-    }
-    
-    private int getLoadedChunks() {
-        return plugin.getServer().getWorlds().stream()
-            .mapToInt(w -> w.getLoadedChunks().length)
-            .sum();
-    }
-    
     public void forceOptimization() {
         plugin.getLogger().info("Forcing optimization cycle...");
+        plugin.getActionCounters().increment(ActionCounters.Action.FORCED_OPTIMIZATIONS);
         currentProfile = OptimizationProfile.AGGRESSIVE;
         aggressiveEntityCulling();
         optimizeChunks();
-        System.gc();
         
         // Reset after 30 seconds
         new BukkitRunnable() {
@@ -488,65 +708,96 @@ class AdaptiveOptimizer {
 
 class MetricsCollector {
     private final OptiCore plugin;
-    private final Map<String, Object> currentMetrics = new ConcurrentHashMap<>();
-    private final LinkedList<Double> tpsHistory = new LinkedList<>();
-    private final int maxHistorySize = 300; // 5 minutes of data
+    private volatile MetricsSnapshot snapshot = MetricsSnapshot.EMPTY;
     
     public MetricsCollector(OptiCore plugin) {
         this.plugin = plugin;
     }
     
+    // Main thread; the only writer of the snapshot reference
     public void collectMetrics() {
-        // TPS
-        double tps = plugin.getServer().getTPS()[0];
-        tpsHistory.add(tps);
-        if (tpsHistory.size() > maxHistorySize) {
-            tpsHistory.removeFirst();
-        }
-        currentMetrics.put("tps", tps);
-        currentMetrics.put("avgTps", tpsHistory.stream().mapToDouble(Double::doubleValue).average().orElse(20.0));
-        
-        // Memory
-        Runtime runtime = Runtime.getRuntime();
-        long usedMemory = runtime.totalMemory() - runtime.freeMemory();
-        currentMetrics.put("memoryUsed", usedMemory);
-        currentMetrics.put("memoryTotal", runtime.totalMemory());
-        currentMetrics.put("memoryMax", runtime.maxMemory());
-        
-        // Entities and chunks
-        int entities = 0, chunks = 0, players = 0;
-        for (World world : plugin.getServer().getWorlds()) {
-            entities += world.getEntities().size();
-            chunks += world.getLoadedChunks().length;
-            players += world.getPlayers().size();
-        }
-        currentMetrics.put("entities", entities);
-        currentMetrics.put("chunks", chunks);
-        currentMetrics.put("players", players);
-        
-        // CPU if available
-        OperatingSystemMXBean osBean = ManagementFactory.getPlatformMXBean(OperatingSystemMXBean.class);
-        currentMetrics.put("cpuLoad", osBean.getProcessCpuLoad() * 100);
+        snapshot = MetricsSnapshot.capture(plugin);
+    }
+    
+    public MetricsSnapshot getSnapshot() {
+        return snapshot;
     }
     
     public void sendPerformanceReport(Player player) {
+        MetricsSnapshot metrics = snapshot;
         player.sendMessage(ChatColor.AQUA + "[OptiCore] " + ChatColor.GREEN + "Performance Report:");
-        player.sendMessage(ChatColor.GRAY + "TPS: " + getColoredTPS((double) currentMetrics.get("tps")));
-        player.sendMessage(ChatColor.GRAY + "Memory: " + getMemoryString());
-        player.sendMessage(ChatColor.GRAY + "Entities: " + currentMetrics.get("entities"));
+        player.sendMessage(ChatColor.GRAY + "TPS: " + getColoredTPS(metrics.tps));
+        player.sendMessage(ChatColor.GRAY + "Memory: " + getMemoryString(metrics));
+        player.sendMessage(ChatColor.GRAY + "Entities: " + metrics.entities);
     }
     
     public void sendDetailedStats(CommandSender sender) {
+        MetricsSnapshot metrics = snapshot;
         sender.sendMessage(ChatColor.AQUA + "========== OptiCore Enhanced Stats ==========");
-        sender.sendMessage(ChatColor.WHITE + "Current TPS: " + getColoredTPS((double) currentMetrics.get("tps")));
-        sender.sendMessage(ChatColor.WHITE + "Average TPS (5min): " + 
-                         ChatColor.YELLOW + String.format("%.2f", currentMetrics.get("avgTps")));
-        sender.sendMessage(ChatColor.WHITE + "Memory: " + getMemoryString());
-        sender.sendMessage(ChatColor.WHITE + "CPU Load: " + 
-                         ChatColor.YELLOW + String.format("%.1f%%", currentMetrics.get("cpuLoad")));
-        sender.sendMessage(ChatColor.WHITE + "Entities: " + ChatColor.BLUE + currentMetrics.get("entities"));
-        sender.sendMessage(ChatColor.WHITE + "Loaded Chunks: " + ChatColor.BLUE + currentMetrics.get("chunks"));
-        sender.sendMessage(ChatColor.WHITE + "Players: " + ChatColor.GREEN + currentMetrics.get("players"));
+        sender.sendMessage(ChatColor.WHITE + "Current TPS: " + getColoredTPS(metrics.tps));
+        DoubleRingBuffer tpsHistory = plugin.getPerformanceMonitor().getTpsHistory();
+        sender.sendMessage(ChatColor.WHITE + "Average TPS (1m/5m/15m): " + ChatColor.YELLOW + String.format("%.2f, %.2f, %.2f",
+                         tpsHistory.average(PerformanceMonitor.WINDOW_1M, 20.0),
+                         tpsHistory.average(PerformanceMonitor.WINDOW_5M, 20.0),
+                         tpsHistory.average(PerformanceMonitor.WINDOW_15M, 20.0)));
+        DoubleRingBuffer msptHistory = plugin.getPerformanceMonitor().getMsptHistory();
+        if (msptHistory.count() > 0) {
+            sender.sendMessage(ChatColor.WHITE + "MSPT (1m avg/max): " + ChatColor.YELLOW + String.format("%.1f / %.1f",
+                             msptHistory.average(PerformanceMonitor.WINDOW_1M, 0.0),
+                             msptHistory.max(PerformanceMonitor.WINDOW_1M, 0.0)));
+        }
+        MsptTrendPredictor predictor = plugin.getTrendPredictor();
+        if (plugin.getSettings().predictionEnabled && plugin.getPerformanceMonitor().getTickSampler().isPrecise()) {
+            double breach = predictor.getSecondsToBreach();
+            sender.sendMessage(ChatColor.WHITE + "MSPT Trend: " + ChatColor.YELLOW + String.format("%.1fms, %+.2fms/s",
+                             predictor.getSmoothedMspt(), predictor.getSlope()) + ChatColor.GRAY +
+                             (breach == 0 ? " (over target)" : Double.isInfinite(breach) ? " (no overrun ahead)" :
+                             String.format(" (target in ~%.0fs)", breach)));
+        }
+        sender.sendMessage(ChatColor.WHITE + "Memory: " + getMemoryString(metrics));
+        if (metrics.cpuLoad >= 0) {
+            sender.sendMessage(ChatColor.WHITE + "CPU Load: " + 
+                             ChatColor.YELLOW + String.format("%.1f%%", metrics.cpuLoad));
+        }
+        sender.sendMessage(ChatColor.WHITE + "Entities: " + ChatColor.BLUE + metrics.entities +
+                         ChatColor.GRAY + " (" + metrics.trackedItems + " items indexed)");
+        if (metrics.tileEntities >= 0) {
+            sender.sendMessage(ChatColor.WHITE + "Tile Entities: " + ChatColor.BLUE + metrics.tileEntities);
+        }
+        sender.sendMessage(ChatColor.WHITE + "Loaded Chunks: " + ChatColor.BLUE + metrics.chunks);
+        if (plugin.getChunkOptimizer().isStarted()) {
+            sender.sendMessage(ChatColor.WHITE + "Chunk Unloads: " + ChatColor.YELLOW +
+                             plugin.getChunkOptimizer().getUnloadQueue().describe());
+        }
+        sender.sendMessage(ChatColor.WHITE + "Players: " + ChatColor.GREEN + metrics.players);
+        CullingEngine cullingEngine = plugin.getCullingEngine();
+        sender.sendMessage(ChatColor.WHITE + "Entity Culling: " + ChatColor.YELLOW + cullingEngine.describeProgress() +
+                         ChatColor.GRAY + String.format(" [budget %.2fms/tick]", cullingEngine.getBudgetNanos() / 1e6));
+        MobAiLod mobAi = plugin.getMobAiLod();
+        sender.sendMessage(ChatColor.WHITE + "Mob AI Throttling: " + ChatColor.YELLOW + mobAi.getTracked() + " mobs" +
+                         ChatColor.GRAY + " (" + (mobAi.isEngaged() ? "engaged" : mobAi.getTracked() > 0 ? "releasing" : "idle") + ", " + mobAi.getRestored() + " restored)");
+        ActionCounters actions = plugin.getActionCounters();
+        ItemMergeBatcher merger = plugin.getItemMergeBatcher();
+        sender.sendMessage(ChatColor.WHITE + "Item Merging: " + ChatColor.YELLOW + actions.get(ActionCounters.Action.ITEM_ENTITIES_SAVED) +
+                         " entities saved" + ChatColor.GRAY + String.format(" (%d items merged, %d queued, last pass %.3fms)",
+                         actions.get(ActionCounters.Action.ITEMS_MERGED), merger.getQueued(), merger.getLastPassNanos() / 1e6));
+        JoinBurstController joins = plugin.getJoinBurstController();
+        if (joins.isStarted() && plugin.getSettings().joinBurstEnabled) {
+            sender.sendMessage(ChatColor.WHITE + "Join Bursts: " + ChatColor.YELLOW + joins.getBursts() + " detected" +
+                             ChatColor.GRAY + " (" + (joins.isBursting() ? "active, " : "") + joins.getRamping() + " ramping, " +
+                             joins.getRamped() + " ramped, " + joins.getLoginsDeferred() + " logins deferred)");
+        }
+        ChunkPregenerator pregenerator = plugin.getPregenerator();
+        if (pregenerator.isActive()) {
+            sender.sendMessage(ChatColor.WHITE + "Pre-generation: " + ChatColor.YELLOW + pregenerator.describeProgress());
+        }
+        sender.sendMessage(ChatColor.WHITE + "Spawn Limits: " + ChatColor.YELLOW + actions.get(ActionCounters.Action.SPAWNS_DENIED) +
+                         " denied" + ChatColor.GRAY + " (" + (plugin.getSettings().spawnLimitsEnabled ? "profile " +
+                         plugin.getAdaptiveOptimizer().getCurrentProfile().name().toLowerCase() : "disabled") + ")");
+        if (metrics != MetricsSnapshot.EMPTY) {
+            sender.sendMessage(ChatColor.GRAY + String.format("Snapshot taken %ds ago in %.3fms",
+                             (System.currentTimeMillis() - metrics.timestamp) / 1000, metrics.captureNanos / 1e6));
+        }
         sender.sendMessage(ChatColor.AQUA + "==========================================");
     }
     
@@ -557,113 +808,409 @@ class MetricsCollector {
         return color + String.format("%.2f", tps);
     }
     
-    private String getMemoryString() {
-        long used = (long) currentMetrics.get("memoryUsed") / 1048576;
-        long max = (long) currentMetrics.get("memoryMax") / 1048576;
+    private String getMemoryString(MetricsSnapshot metrics) {
+        long used = metrics.memoryUsed / 1048576;
+        long max = Math.max(1, metrics.memoryMax / 1048576);
         double percent = (double) used / max * 100;
         
         ChatColor color = percent > 80 ? ChatColor.RED :
                          percent > 60 ? ChatColor.YELLOW :
                          ChatColor.GREEN;
         
-        return color + used + "MB/" + max + "MB (" + String.format("%.1f%%", percent) + ")";
+        return color.toString() + used + "MB/" + max + "MB (" + String.format("%.1f%%", percent) + ")";
     }
 }
 
-// Simplified helper classes (PerformanceMonitor, EntityOptimizer, ChunkOptimizer, MemoryManager)
+// Simplified helper classes (PerformanceMonitor, ChunkOptimizer)
 // These would contain the core logic from the original but with improvements
 
 class PerformanceMonitor {
+    // History windows, one sample per second
+    static final int WINDOW_1M = 0;
+    static final int WINDOW_5M = 1;
+    static final int WINDOW_15M = 2;
+    
     private final OptiCore plugin;
-    private final LinkedList<Double> tpsHistory = new LinkedList<>();
+    private final DoubleRingBuffer tpsHistory = new DoubleRingBuffer(900, 60, 300, 900);
+    private final DoubleRingBuffer msptHistory = new DoubleRingBuffer(900, 60, 300, 900);
+    private final TickSampler tickSampler;
     
     public PerformanceMonitor(OptiCore plugin) {
         this.plugin = plugin;
+        this.tickSampler = new TickSampler(plugin, plugin.getSettings().msptWindowTicks);
     }
     
     public double getTPS() {
         return plugin.getServer().getTPS()[0];
     }
     
+    // Called once per second from the main thread, the only writer of the histories
+    public void recordSample() {
+        tpsHistory.add(getTPS());
+        msptHistory.add(tickSampler.drainMeanMillis());
+    }
+    
+    public TickSampler getTickSampler() {
+        return tickSampler;
+    }
+    
+    public DoubleRingBuffer getTpsHistory() {
+        return tpsHistory;
+    }
+    
+    public DoubleRingBuffer getMsptHistory() {
+        return msptHistory;
+    }
+    
     public void activateEmergencyMode() {
         plugin.getLogger().warning("TPS Emergency mode activated!");
     }
     
-    public String generateDetailedReport() {
-        // Implementation similar to original but with better formatting
-        return "Detailed performance report generation...";
+    // Safe to call off the main thread: reads only the snapshot and published histories
+    public String generateDetailedReport(HotspotSnapshot snapshot, SpawnGovernor.DenialSnapshot denials, long historyRange) {
+        StringBuilder report = new StringBuilder();
+        report.append(ChatColor.AQUA).append("========== OptiCore Analysis ==========\n");
+        appendTrend(report, "TPS", tpsHistory, 20.0);
+        appendTrend(report, "MSPT", msptHistory, 0.0);
+        appendMspt(report, "Last " + tickSampler.getWindowTicks() + " ticks", tickSampler.getLastWindow());
+        appendMspt(report, "Since startup", tickSampler.getLifetime());
+        if (!tickSampler.isPrecise()) {
+            report.append(ChatColor.GRAY).append("(tick interval sampling - run Paper for exact tick times)\n");
+        } else if (plugin.getSettings().predictionEnabled) {
+            plugin.getTrendPredictor().appendReport(report);
+        }
+        if (plugin.getSettings().historyEnabled) {
+            plugin.getHistory().appendReport(report, historyRange);
+        }
+        List<String> distanceChanges = plugin.getViewDistanceController().getRecentChanges();
+        if (!distanceChanges.isEmpty()) {
+            report.append(ChatColor.AQUA).append("Recent distance changes:\n");
+            for (String change : distanceChanges) {
+                report.append(ChatColor.GRAY).append("  ").append(change).append('\n');
+            }
+        }
+        snapshot.appendReport(report,
+            plugin.getSettings().analysisTopChunks,
+            plugin.getSettings().analysisTopEntityTypes);
+        plugin.getActionFeedback().appendReport(report);
+        if (plugin.getStallWatchdog() != null) {
+            plugin.getStallWatchdog().appendReport(report, plugin.getSettings().watchdogTopFrames);
+        }
+        plugin.getFlightRecording().appendReport(report);
+        plugin.getPluginAttribution().appendReport(report, plugin.getSettings().analysisTopListeners);
+        denials.appendReport(report,
+            plugin.getSettings().analysisTopEntityTypes,
+            plugin.getSettings().analysisTopChunks);
+        report.append(ChatColor.AQUA).append("=======================================");
+        return report.toString();
     }
-}
-
-class EntityOptimizer {
-    private final OptiCore plugin;
     
-    public EntityOptimizer(OptiCore plugin) {
-        this.plugin = plugin;
+    private void appendTrend(StringBuilder report, String label, DoubleRingBuffer history, double fallback) {
+        if (history.count() == 0) return;
+        double recent = history.average(WINDOW_1M, fallback);
+        double longer = history.average(WINDOW_15M, fallback);
+        String direction = Math.abs(recent - longer) < longer * 0.05 ? "steady" : recent > longer ? "rising" : "falling";
+        report.append(ChatColor.WHITE).append(label).append(" trend (1m/5m/15m): ").append(ChatColor.YELLOW)
+            .append(String.format("%.2f / %.2f / %.2f", recent, history.average(WINDOW_5M, fallback), longer))
+            .append(ChatColor.GRAY).append(" - ").append(direction)
+            .append(String.format(", 15m range %.2f-%.2f", history.min(WINDOW_15M, fallback), history.max(WINDOW_15M, fallback)))
+            .append('\n');
     }
     
-    public void mergeNearbyItems(Item item) {
-        // Smart item merging logic
+    private void appendMspt(StringBuilder report, String label, LogHistogram histogram) {
+        report.append(ChatColor.WHITE).append("MSPT ").append(label).append(": ").append(ChatColor.YELLOW)
+            .append(String.format("p50 %.1f, p95 %.1f, p99 %.1f, max %.1f",
+                histogram.getValueAtPercentile(50) / 1000.0,
+                histogram.getValueAtPercentile(95) / 1000.0,
+                histogram.getValueAtPercentile(99) / 1000.0,
+                histogram.getMax() / 1000.0))
+            .append('\n');
     }
 }
 
-class ChunkOptimizer {
+// Tracks how active each loaded chunk is and hands out the coldest ones for unloading.
+//
+// Activity (block changes, entity spawns, players crossing into the chunk) adds to a
+// score that decays exponentially with a configurable half-life. Because every score
+// decays at the same rate, the score is stored in log space relative to a fixed epoch:
+// the ordering between chunks then never changes with time alone, so the heap kept by
+// each ChunkActivityTable stays valid and only needs fixing up on new activity.
+class ChunkOptimizer implements Listener {
+    private static final double BLOCK_CHANGE_ACTIVITY = 1.0;
+    private static final double ENTITY_SPAWN_ACTIVITY = 0.5;
+    private static final double PLAYER_ENTER_ACTIVITY = 5.0;
+    
     private final OptiCore plugin;
-    private final Map<Chunk, ChunkData> chunkDataMap = new ConcurrentHashMap<>();
+    private final Map<UUID, ChunkActivityTable> tables = new HashMap<>();
+    private final Map<UUID, PlayerChunk> playerChunks = new HashMap<>();
+    private final long epoch = System.currentTimeMillis();
+    private final double decayPerMilli;
+    private final ChunkUnloadQueue unloadQueue;
+    private boolean started;
     
-    class ChunkData {
-        long loadTime;
-        int activityScore;
-        boolean hasPlayers;
+    // Last chunk each online player was counted in
+    private static final class PlayerChunk {
+        UUID world;
+        long key;
     }
     
     public ChunkOptimizer(OptiCore plugin) {
         this.plugin = plugin;
+        // Fixed for the lifetime of the tables: stored scores are scaled by it
+        this.decayPerMilli = Math.log(2) / plugin.getSettings().chunkActivityHalfLifeMillis;
+        this.unloadQueue = new ChunkUnloadQueue(plugin, this);
+    }
+    
+    // Once, at enable or on the reload that turns smart-chunk-loading on
+    public void start() {
+        if (started) return;
+        started = true;
+        plugin.getServer().getPluginManager().registerEvents(this, plugin);
+        unloadQueue.start();
+        // Pick up chunks and players that were already there (plugin reloads)
+        for (World world : plugin.getServer().getWorlds()) {
+            for (Chunk chunk : world.getLoadedChunks()) {
+                onChunkLoad(chunk);
+            }
+            for (Player player : world.getPlayers()) {
+                updatePlayerChunk(player, player.getLocation());
+            }
+        }
     }
     
     public void onChunkLoad(Chunk chunk) {
-        ChunkData data = new ChunkData();
-        data.loadTime = System.currentTimeMillis();
-        chunkDataMap.put(chunk, data);
+        World world = chunk.getWorld();
+        ChunkActivityTable table = tables.get(world.getUID());
+        if (table == null) {
+            table = new ChunkActivityTable(world, 1024);
+            tables.put(world.getUID(), table);
+        }
+        table.insert(ChunkKey.pack(chunk.getX(), chunk.getZ()), secondsSinceEpoch(System.currentTimeMillis()));
     }
     
     public void onChunkUnload(Chunk chunk) {
-        chunkDataMap.remove(chunk);
+        ChunkActivityTable table = tables.get(chunk.getWorld().getUID());
+        if (table != null) {
+            table.remove(ChunkKey.pack(chunk.getX(), chunk.getZ()));
+        }
     }
-}
-
-class MemoryManager {
-    private final OptiCore plugin;
-    private long lastGcTime = 0;
     
-    public MemoryManager(OptiCore plugin) {
-        this.plugin = plugin;
+    boolean isStarted() {
+        return started;
+    }
+    
+    ChunkUnloadQueue getUnloadQueue() {
+        return unloadQueue;
+    }
+    
+    public int getTrackedChunks() {
+        int total = 0;
+        for (ChunkActivityTable table : tables.values()) {
+            total += table.size();
+        }
+        return total;
+    }
+    
+    public void recordActivity(World world, int chunkX, int chunkZ, double amount) {
+        ChunkActivityTable table = tables.get(world.getUID());
+        if (table == null) return;
+        int slot = table.find(ChunkKey.pack(chunkX, chunkZ));
+        if (slot >= 0) {
+            addActivity(table, slot, amount, System.currentTimeMillis());
+        }
+    }
+    
+    private void addActivity(ChunkActivityTable table, int slot, double amount, long now) {
+        double current = currentScore(table.scoreAt(slot), now);
+        table.raiseScore(slot, Math.log(current + amount) + (now - epoch) * decayPerMilli);
     }
     
-    public void optimizeMemory() {
-        Runtime runtime = Runtime.getRuntime();
-        double usage = (double)(runtime.totalMemory() - runtime.freeMemory()) / runtime.maxMemory();
+    private double currentScore(double logScore, long now) {
+        return Math.exp(logScore - (now - epoch) * decayPerMilli);
+    }
+    
+    private int secondsSinceEpoch(long time) {
+        return (int) ((time - epoch) / 1000L);
+    }
+    
+    // Queues up to limit chunks for unloading, coldest first across all worlds. Chunks
+    // that are occupied, too young or force-loaded are put back; nothing scans the world.
+    // The unload queue drains them over the following ticks (see unloadQueued).
+    public int queueColdChunks(int limit) {
+        // Without the drain task nothing would ever leave the queue
+        if (!started) return 0;
+        Settings settings = plugin.getSettings();
+        int minAgeSeconds = settings.chunkMinAgeSeconds;
+        double coldScore = settings.chunkColdScore;
+        long now = System.currentTimeMillis();
+        int nowSeconds = secondsSinceEpoch(now);
         
-        if (usage > plugin.getConfig().getDouble("memory.gc-threshold", 0.85)) {
-            long now = System.currentTimeMillis();
-            if (now - lastGcTime > plugin.getConfig().getLong("gc-cooldown", 30000)) {
-                System.gc();
-                lastGcTime = now;
-                plugin.getLogger().info("Memory optimization performed");
+        // Skipped chunks go back on the heap after the loop so they are not polled again;
+        // at most one per examined chunk
+        ChunkActivityTable[] skippedTables = new ChunkActivityTable[limit * 4];
+        long[] skippedKeys = new long[limit * 4];
+        int skipped = 0;
+        int queued = 0;
+        int examined = 0;
+        while (queued < limit && examined < limit * 4) {
+            ChunkActivityTable table = coldestTable();
+            if (table == null) break;
+            int slot = table.heapPeek();
+            if (currentScore(table.scoreAt(slot), now) > coldScore) break; // Everything left is warmer
+            table.heapPoll();
+            examined++;
+            
+            long key = table.keyAt(slot);
+            int chunkX = ChunkKey.x(key);
+            int chunkZ = ChunkKey.z(key);
+            if (table.playersAt(slot) > 0 || nowSeconds - table.loadTimeAt(slot) < minAgeSeconds
+                    || table.world.isChunkForceLoaded(chunkX, chunkZ)) {
+                skippedTables[skipped] = table;
+                skippedKeys[skipped++] = key;
+                continue;
+            }
+            if (!unloadQueue.offer(table, key)) {
+                skippedTables[skipped] = table;
+                skippedKeys[skipped++] = key;
+                break;
+            }
+            queued++;
+        }
+        for (int i = 0; i < skipped; i++) {
+            ChunkActivityTable table = skippedTables[i];
+            int slot = table.find(skippedKeys[i]);
+            if (slot >= 0) {
+                table.heapOffer(slot);
             }
         }
+        return queued;
     }
     
-    public void sendMemoryReport(CommandSender sender) {
-        Runtime runtime = Runtime.getRuntime();
-        long used = (runtime.totalMemory() - runtime.freeMemory()) / 1048576;
-        long free = runtime.freeMemory() / 1048576;
-        long max = runtime.maxMemory() / 1048576;
+    // Called by the unload queue when the chunk's turn comes. Chunks that warmed up,
+    // gained a player or were unloaded meanwhile are skipped; skipped and refused
+    // chunks return to the heap.
+    boolean unloadQueued(ChunkActivityTable table, long key) {
+        if (tables.get(table.world.getUID()) != table) return false; // World unloaded
+        int slot = table.find(key);
+        if (slot < 0) return false; // Unloaded by the server meanwhile
+        long now = System.currentTimeMillis();
+        int chunkX = ChunkKey.x(key);
+        int chunkZ = ChunkKey.z(key);
+        if (table.playersAt(slot) > 0 || currentScore(table.scoreAt(slot), now) > plugin.getSettings().chunkColdScore
+                || table.world.isChunkForceLoaded(chunkX, chunkZ)) {
+            table.heapOffer(slot);
+            return false;
+        }
+        if (table.world.unloadChunk(chunkX, chunkZ, true)) {
+            table.remove(key); // In case the unload event did not reach us
+            plugin.getActionCounters().increment(ActionCounters.Action.CHUNKS_UNLOADED);
+            return true;
+        }
+        // Still in use by the server; treat as freshly loaded so it is not retried at once
+        table.setLoadTime(slot, secondsSinceEpoch(now));
+        table.heapOffer(slot);
+        return false;
+    }
+    
+    private ChunkActivityTable coldestTable() {
+        ChunkActivityTable coldest = null;
+        double coldestScore = Double.POSITIVE_INFINITY;
+        for (ChunkActivityTable table : tables.values()) {
+            int slot = table.heapPeek();
+            if (slot >= 0 && (coldest == null || table.scoreAt(slot) < coldestScore)) {
+                coldest = table;
+                coldestScore = table.scoreAt(slot);
+            }
+        }
+        return coldest;
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockPlace(BlockPlaceEvent event) {
+        Block block = event.getBlock();
+        recordActivity(block.getWorld(), block.getX() >> 4, block.getZ() >> 4, BLOCK_CHANGE_ACTIVITY);
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBreak(BlockBreakEvent event) {
+        Block block = event.getBlock();
+        recordActivity(block.getWorld(), block.getX() >> 4, block.getZ() >> 4, BLOCK_CHANGE_ACTIVITY);
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntitySpawn(EntitySpawnEvent event) {
+        Location location = event.getLocation();
+        recordActivity(location.getWorld(), location.getBlockX() >> 4, location.getBlockZ() >> 4, ENTITY_SPAWN_ACTIVITY);
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPlayerMove(PlayerMoveEvent event) {
+        Location from = event.getFrom();
+        Location to = event.getTo();
+        if (to == null) return;
+        if ((from.getBlockX() >> 4) != (to.getBlockX() >> 4) || (from.getBlockZ() >> 4) != (to.getBlockZ() >> 4)) {
+            updatePlayerChunk(event.getPlayer(), to);
+        }
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPlayerTeleport(PlayerTeleportEvent event) {
+        if (event.getTo() != null) {
+            updatePlayerChunk(event.getPlayer(), event.getTo());
+        }
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerRespawn(PlayerRespawnEvent event) {
+        updatePlayerChunk(event.getPlayer(), event.getRespawnLocation());
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        updatePlayerChunk(event.getPlayer(), event.getPlayer().getLocation());
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        PlayerChunk previous = playerChunks.remove(event.getPlayer().getUniqueId());
+        if (previous != null) {
+            adjustPlayers(previous.world, previous.key, -1);
+        }
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        tables.remove(event.getWorld().getUID());
+    }
+    
+    private void updatePlayerChunk(Player player, Location to) {
+        UUID world = to.getWorld().getUID();
+        long key = ChunkKey.ofBlock(to.getBlockX(), to.getBlockZ());
+        PlayerChunk current = playerChunks.get(player.getUniqueId());
+        if (current == null) {
+            current = new PlayerChunk();
+            playerChunks.put(player.getUniqueId(), current);
+        } else if (current.world.equals(world) && current.key == key) {
+            return;
+        } else {
+            adjustPlayers(current.world, current.key, -1);
+        }
+        current.world = world;
+        current.key = key;
         
-        sender.sendMessage(ChatColor.AQUA + "======== Memory Report ========");
-        sender.sendMessage(ChatColor.WHITE + "Used: " + ChatColor.RED + used + "MB");
-        sender.sendMessage(ChatColor.WHITE + "Free: " + ChatColor.GREEN + free + "MB");
-        sender.sendMessage(ChatColor.WHITE + "Max: " + ChatColor.BLUE + max + "MB");
-        sender.sendMessage(ChatColor.AQUA + "==============================");
+        ChunkActivityTable table = tables.get(world);
+        int slot = table == null ? -1 : table.find(key);
+        if (slot >= 0) {
+            table.addPlayers(slot, 1);
+            addActivity(table, slot, PLAYER_ENTER_ACTIVITY, System.currentTimeMillis());
+        }
+    }
+    
+    private void adjustPlayers(UUID world, long key, int delta) {
+        ChunkActivityTable table = tables.get(world);
+        int slot = table == null ? -1 : table.find(key);
+        if (slot >= 0) {
+            table.addPlayers(slot, delta);
+        }
     }
 }
@@ -0,0 +1,35 @@
+package com.kebapci42.opticore;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// Flight recorder event for an optimization action being started. Only loaded
+// through FlightRecording, which checks that the JVM has JFR first.
+@Name("com.kebapci42.opticore.OptimizerAction")
+@Label("Optimizer Action")
+@Category("OptiCore")
+@Description("An optimization measure started by OptiCore")
+@StackTrace(false)
+class OptimizerActionEvent extends jdk.jfr.Event {
+    @Label("Action")
+    String action;
+
+    @Label("Profile")
+    String profile;
+
+    @Label("MSPT")
+    @Description("Mean tick time of the last second when the action started")
+    double mspt;
+
+    static void emit(String action, String profile, double mspt) {
+        OptimizerActionEvent event = new OptimizerActionEvent();
+        if (!event.shouldCommit()) return;
+        event.action = action;
+        event.profile = profile;
+        event.mspt = mspt;
+        event.commit();
+    }
+}
@@ -0,0 +1,97 @@
+package com.kebapci42.opticore;
+
+import com.kebapci42.opticore.util.ChunkKey;
+import com.kebapci42.opticore.util.LongObjectMap;
+import org.bukkit.Location;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+// Player positions bucketed by chunk, rebuilt once per optimization pass so that
+// "is any player within R" is a few primitive map lookups instead of a
+// getNearbyEntities query per entity. Main thread only.
+class PlayerProximityGrid {
+    // Half-width and height of a player's bounding box, so proximity matches the
+    // box-intersection semantics getNearbyEntities had
+    private static final double PLAYER_HALF_WIDTH = 0.3;
+    private static final double PLAYER_HEIGHT = 1.8;
+
+    private final Map<UUID, LongObjectMap<Bucket>> worlds = new HashMap<>();
+    private final Location scratch = new Location(null, 0, 0, 0);
+
+    private static final class Bucket {
+        double[] coords = new double[6];
+        int count;
+
+        void add(double x, double y, double z) {
+            int offset = count * 3;
+            if (offset + 3 > coords.length) {
+                double[] grown = new double[coords.length << 1];
+                System.arraycopy(coords, 0, grown, 0, offset);
+                coords = grown;
+            }
+            coords[offset] = x;
+            coords[offset + 1] = y;
+            coords[offset + 2] = z;
+            count++;
+        }
+    }
+
+    public void rebuild(Server server) {
+        worlds.clear();
+        for (World world : server.getWorlds()) {
+            LongObjectMap<Bucket> buckets = null;
+            for (Player player : world.getPlayers()) {
+                if (buckets == null) {
+                    buckets = new LongObjectMap<>();
+                    worlds.put(world.getUID(), buckets);
+                }
+                player.getLocation(scratch);
+                long key = ChunkKey.ofPosition(scratch.getX(), scratch.getZ());
+                Bucket bucket = buckets.get(key);
+                if (bucket == null) {
+                    bucket = new Bucket();
+                    buckets.put(key, bucket);
+                }
+                bucket.add(scratch.getX(), scratch.getY(), scratch.getZ());
+            }
+        }
+    }
+
+    public boolean isPlayerNearby(World world, double x, double y, double z, double radius) {
+        LongObjectMap<Bucket> buckets = worlds.get(world.getUID());
+        if (buckets == null) return false;
+
+        double reach = radius + PLAYER_HALF_WIDTH;
+        int minChunkX = (int) Math.floor(x - reach) >> 4;
+        int maxChunkX = (int) Math.floor(x + reach) >> 4;
+        int minChunkZ = (int) Math.floor(z - reach) >> 4;
+        int maxChunkZ = (int) Math.floor(z + reach) >> 4;
+
+        for (int cx = minChunkX; cx <= maxChunkX; cx++) {
+            for (int cz = minChunkZ; cz <= maxChunkZ; cz++) {
+                Bucket bucket = buckets.get(ChunkKey.pack(cx, cz));
+                if (bucket == null) continue;
+                double[] coords = bucket.coords;
+                for (int i = 0, end = bucket.count * 3; i < end; i += 3) {
+                    double py = coords[i + 1];
+                    if (Math.abs(coords[i] - x) <= reach
+                            && Math.abs(coords[i + 2] - z) <= reach
+                            && py <= y + radius && py + PLAYER_HEIGHT >= y - radius) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    public boolean hasPlayerInChunk(World world, int chunkX, int chunkZ) {
+        LongObjectMap<Bucket> buckets = worlds.get(world.getUID());
+        return buckets != null && buckets.containsKey(ChunkKey.pack(chunkX, chunkZ));
+    }
+}
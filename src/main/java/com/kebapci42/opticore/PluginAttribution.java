@@ -0,0 +1,314 @@
+package com.kebapci42.opticore;
+
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.event.Cancellable;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventException;
+import org.bukkit.event.HandlerList;
+import org.bukkit.plugin.EventExecutor;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.RegisteredListener;
+import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.scheduler.BukkitTask;
+import org.bukkit.scheduler.BukkitWorker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Attributes main-thread cost to the plugins causing it, so culling is not the only
+// answer to a slow server.
+//
+// Every registered listener, OptiCore's own included, is replaced in its HandlerList by
+// a TimedListener that delegates to it and adds the System.nanoTime difference to a
+// per-plugin, per-event Timing of LongAdders (striped, so async events on many threads
+// do not contend). A listener sees one map lookup only when the event class differs
+// from its previous call. Lists are rewritten in their original order under the list's
+// lock, and rescanned periodically to catch listeners registered later. Turning
+// attribution off puts the original listeners back.
+//
+// The scheduler API exposes no run times, so tasks are attributed by count: pending
+// sync and async tasks and busy async workers per plugin, sampled every rescan.
+// Toggled at runtime with /opticore attribution. Main thread, except TimedListener
+// (any thread firing events) and appendReport (off-thread, reads only adders and the
+// published task sample).
+class PluginAttribution {
+    private static final EventExecutor UNUSED = (listener, event) -> { };
+
+    private final OptiCore plugin;
+    private final Map<Plugin, ConcurrentHashMap<Class<?>, Timing>> timings = new ConcurrentHashMap<>();
+    private volatile boolean enabled;
+    private volatile long sinceNanos = System.nanoTime();
+    private volatile List<TaskCount> taskSample = Collections.emptyList();
+    private BukkitRunnable rescanTask;
+    private int wrapped;
+
+    private static final class Timing {
+        final String plugin;
+        final String event;
+        final boolean async;
+        final LongAdder nanos = new LongAdder();
+        final LongAdder calls = new LongAdder();
+        final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        Timing(String plugin, String event, boolean async) {
+            this.plugin = plugin;
+            this.event = event;
+            this.async = async;
+        }
+    }
+
+    // Immutable, so a racy read of TimedListener.last always sees a whole pair
+    private static final class LastTiming {
+        final Class<?> type;
+        final Timing timing;
+
+        LastTiming(Class<?> type, Timing timing) {
+            this.type = type;
+            this.timing = timing;
+        }
+    }
+
+    private static final class TaskCount {
+        final String plugin;
+        int sync;
+        int async;
+        int running;
+
+        TaskCount(String plugin) {
+            this.plugin = plugin;
+        }
+    }
+
+    private final class TimedListener extends RegisteredListener {
+        final RegisteredListener delegate;
+        final ConcurrentHashMap<Class<?>, Timing> pluginTimings;
+        LastTiming last;
+
+        TimedListener(RegisteredListener delegate) {
+            super(delegate.getListener(), UNUSED, delegate.getPriority(), delegate.getPlugin(),
+                delegate.isIgnoringCancelled());
+            this.delegate = delegate;
+            this.pluginTimings = timings.computeIfAbsent(delegate.getPlugin(), p -> new ConcurrentHashMap<>());
+        }
+
+        @Override
+        public void callEvent(Event event) throws EventException {
+            if (delegate.isIgnoringCancelled() && event instanceof Cancellable && ((Cancellable) event).isCancelled()) {
+                return; // The delegate would skip it too; don't count a call that did nothing
+            }
+            long start = System.nanoTime();
+            try {
+                delegate.callEvent(event);
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                Timing timing = timingFor(event);
+                timing.nanos.add(elapsed);
+                timing.calls.increment();
+                timing.maxNanos.accumulate(elapsed);
+            }
+        }
+
+        private Timing timingFor(Event event) {
+            LastTiming cached = last;
+            if (cached != null && cached.type == event.getClass()) return cached.timing;
+            Timing timing = pluginTimings.get(event.getClass());
+            if (timing == null) {
+                timing = pluginTimings.computeIfAbsent(event.getClass(),
+                    type -> new Timing(delegate.getPlugin().getName(), event.getEventName(), event.isAsynchronous()));
+            }
+            last = new LastTiming(event.getClass(), timing);
+            return timing;
+        }
+    }
+
+    PluginAttribution(OptiCore plugin) {
+        this.plugin = plugin;
+    }
+
+    void start() {
+        if (plugin.getSettings().attributionEnabled) {
+            setEnabled(true);
+        }
+    }
+
+    void stop() {
+        setEnabled(false);
+    }
+
+    void setEnabled(boolean enable) {
+        if (enable == enabled) return;
+        enabled = enable;
+        if (enable) {
+            // A fresh measurement; the rate denominator must not span the time spent off
+            reset();
+            rescan();
+            long period = plugin.getSettings().attributionRescanSeconds * 20L;
+            rescanTask = new BukkitRunnable() {
+                @Override
+                public void run() {
+                    rescan();
+                }
+            };
+            rescanTask.runTaskTimer(plugin, period, period);
+        } else {
+            if (rescanTask != null) {
+                rescanTask.cancel();
+                rescanTask = null;
+            }
+            rewriteHandlerLists(false);
+            wrapped = 0;
+        }
+    }
+
+    void reset() {
+        for (Map<Class<?>, Timing> pluginTimings : timings.values()) {
+            for (Timing timing : pluginTimings.values()) {
+                timing.nanos.reset();
+                timing.calls.reset();
+                timing.maxNanos.reset();
+            }
+        }
+        sinceNanos = System.nanoTime();
+    }
+
+    void handleCommand(CommandSender sender, String[] args) {
+        String action = args.length > 1 ? args[1].toLowerCase() : "status";
+        switch (action) {
+            case "on":
+                setEnabled(true);
+                sender.sendMessage(ChatColor.GREEN + "Plugin attribution enabled - timing " + wrapped + " listeners");
+                break;
+            case "off":
+                setEnabled(false);
+                sender.sendMessage(ChatColor.GREEN + "Plugin attribution disabled - original listeners restored");
+                break;
+            case "reset":
+                reset();
+                sender.sendMessage(ChatColor.GREEN + "Plugin attribution timings reset");
+                break;
+            case "status":
+                sender.sendMessage(ChatColor.AQUA + "Plugin attribution: " + (enabled
+                    ? ChatColor.GREEN + "on, timing " + wrapped + " listeners"
+                    : ChatColor.YELLOW + "off") + ChatColor.GRAY + " - results in /opticore analyze");
+                break;
+            default:
+                sender.sendMessage(ChatColor.RED + "Usage: /opticore attribution [status | on | off | reset]");
+                break;
+        }
+    }
+
+    private void rescan() {
+        wrapped = rewriteHandlerLists(true);
+        // Plugins disabled since the last scan took their listeners with them
+        timings.keySet().removeIf(owner -> !owner.isEnabled());
+        sampleTasks();
+    }
+
+    // Wraps (or unwraps) every listener; returns how many are timed afterwards
+    private int rewriteHandlerLists(boolean wrap) {
+        int timedCount = 0;
+        for (HandlerList list : new ArrayList<>(HandlerList.getHandlerLists())) {
+            // Holding the list's lock keeps callers on other threads from baking a half-rewritten list
+            synchronized (list) {
+                RegisteredListener[] listeners = list.getRegisteredListeners();
+                if (wrap) {
+                    timedCount += listeners.length;
+                }
+                boolean needed = false;
+                for (RegisteredListener listener : listeners) {
+                    if ((listener instanceof TimedListener) != wrap) {
+                        needed = true;
+                        break;
+                    }
+                }
+                if (!needed) continue;
+                for (RegisteredListener listener : listeners) {
+                    list.unregister(listener);
+                }
+                for (RegisteredListener listener : listeners) {
+                    boolean timed = listener instanceof TimedListener;
+                    if (timed != wrap) {
+                        list.register(wrap ? new TimedListener(listener) : ((TimedListener) listener).delegate);
+                    } else {
+                        list.register(listener);
+                    }
+                }
+            }
+        }
+        return timedCount;
+    }
+
+    private void sampleTasks() {
+        Map<Plugin, TaskCount> counts = new HashMap<>();
+        for (BukkitTask task : plugin.getServer().getScheduler().getPendingTasks()) {
+            TaskCount count = counts.computeIfAbsent(task.getOwner(), p -> new TaskCount(p.getName()));
+            if (task.isSync()) {
+                count.sync++;
+            } else {
+                count.async++;
+            }
+        }
+        for (BukkitWorker worker : plugin.getServer().getScheduler().getActiveWorkers()) {
+            counts.computeIfAbsent(worker.getOwner(), p -> new TaskCount(p.getName())).running++;
+        }
+        List<TaskCount> sample = new ArrayList<>(counts.values());
+        sample.sort((a, b) -> a.sync != b.sync ? Integer.compare(b.sync, a.sync) : Integer.compare(b.async, a.async));
+        taskSample = sample;
+    }
+
+    void appendReport(StringBuilder report, int top) {
+        if (!enabled) {
+            report.append(ChatColor.AQUA).append("Plugin attribution: ").append(ChatColor.GRAY)
+                .append("off (/opticore attribution on)\n");
+            return;
+        }
+        double seconds = Math.max(1.0, (System.nanoTime() - sinceNanos) / 1e9);
+        List<Timing> all = new ArrayList<>();
+        Map<String, Long> syncPerPlugin = new HashMap<>();
+        for (Map<Class<?>, Timing> pluginTimings : timings.values()) {
+            for (Timing timing : pluginTimings.values()) {
+                if (timing.calls.sum() == 0) continue;
+                all.add(timing);
+                if (!timing.async) {
+                    syncPerPlugin.merge(timing.plugin, timing.nanos.sum(), Long::sum);
+                }
+            }
+        }
+        report.append(ChatColor.AQUA).append(String.format("Listener time by plugin (main thread, last %.0fs):%n", seconds));
+        List<Map.Entry<String, Long>> plugins = new ArrayList<>(syncPerPlugin.entrySet());
+        plugins.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+        for (int i = 0; i < Math.min(top, plugins.size()); i++) {
+            Map.Entry<String, Long> entry = plugins.get(i);
+            report.append(ChatColor.WHITE).append("  ").append(entry.getKey()).append(": ")
+                .append(ChatColor.YELLOW).append(String.format("%.2fms/s%n", entry.getValue() / 1e6 / seconds));
+        }
+        report.append(ChatColor.AQUA).append("Slowest listeners:\n");
+        all.sort((a, b) -> Long.compare(b.nanos.sum(), a.nanos.sum()));
+        for (int i = 0; i < Math.min(top, all.size()); i++) {
+            Timing timing = all.get(i);
+            long calls = timing.calls.sum();
+            long nanos = timing.nanos.sum();
+            report.append(ChatColor.WHITE).append("  ").append(timing.plugin).append(' ').append(timing.event)
+                .append(timing.async ? " (async)" : "").append(": ")
+                .append(ChatColor.YELLOW).append(String.format("%.2fms/s", nanos / 1e6 / seconds))
+                .append(ChatColor.GRAY).append(String.format(", %d calls, avg %.1fus, max %.2fms%n",
+                    calls, nanos / 1e3 / calls, timing.maxNanos.get() / 1e6));
+        }
+        List<TaskCount> tasks = taskSample;
+        if (tasks.isEmpty()) return;
+        report.append(ChatColor.AQUA).append("Scheduled tasks by plugin (pending sync / async, async running):\n");
+        for (int i = 0; i < Math.min(top, tasks.size()); i++) {
+            TaskCount count = tasks.get(i);
+            report.append(ChatColor.WHITE).append("  ").append(count.plugin).append(": ")
+                .append(ChatColor.GRAY).append(count.sync).append(" / ").append(count.async)
+                .append(", ").append(count.running).append('\n');
+        }
+    }
+}
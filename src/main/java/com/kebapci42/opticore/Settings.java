@@ -0,0 +1,332 @@
+package com.kebapci42.opticore;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.entity.EntityType;
+
+import java.util.logging.Logger;
+
+// Every config.yml value OptiCore uses, parsed and range-checked once.
+//
+// Instances are immutable; OptiCore swaps the whole object on /opticore reload, so
+// hot paths read a final field of whatever snapshot they picked up instead of doing
+// string-path lookups in FileConfiguration. Out-of-range values are clamped with a
+// warning rather than failing the load.
+final class Settings {
+    // General
+    final boolean showStatsOnJoin;
+    final boolean mergeItems;
+    final double itemMergeRadius;
+    final long itemMergeBudgetNanos;
+    final boolean smartChunkLoading;
+
+    // Emergency mode
+    final boolean msptEmergencyTrigger;
+    final double emergencyTps;
+    final double emergencyMspt;
+    final long emergencyCooldownMillis;
+    final int maxEmergencyActivations;
+    final int entityThreshold;
+    final int chunkThreshold;
+
+    // Scheduling (applied at startup)
+    final long optimizationIntervalTicks;
+    final long metricsIntervalTicks;
+    final int msptWindowTicks;
+
+    // MSPT trend prediction; window and horizon are applied at startup
+    final boolean predictionEnabled;
+    final double predictionTargetMspt;
+    final double predictionSmoothing;
+    final int predictionWindowSeconds;
+    final int predictionHorizonSeconds;
+    final double predictionMinSlope;
+    final long predictionCooldownMillis;
+
+    // Join bursts
+    final boolean joinBurstEnabled;
+    final int joinBurstWindowSeconds;
+    final int joinBurstThreshold;
+    final int joinBurstStartDistance;
+    final int joinBurstRampSeconds;
+    final boolean joinBurstDenyLogins;
+    final double joinBurstDenyAboveMspt;
+    final String joinBurstDenyMessage;
+
+    // Persistent history (applied at startup)
+    final boolean historyEnabled;
+    final int historySecondsRetentionHours;
+    final int historyMinutesRetentionDays;
+    final int historyHoursRetentionDays;
+
+    // Chunk pre-generation
+    final boolean pregenPauseWithPlayers;
+    final double pregenTargetMspt;
+    final double pregenPauseMspt;
+    final int pregenMaxConcurrency;
+    final long pregenBudgetNanos;
+    final int pregenMaxRadius;
+
+    // Action feedback
+    final int feedbackWindowSeconds;
+    final int feedbackDelaySeconds;
+    final double feedbackExploration;
+
+    // Flight recorder (applied at startup, except overrun-mspt and dump limits)
+    final boolean jfrEnabled;
+    final String jfrConfiguration;
+    final int jfrMaxAgeSeconds;
+    final int jfrMaxSizeMb;
+    final int jfrDumpCooldownSeconds;
+    final int jfrKeepDumps;
+    final double jfrOverrunMspt;
+
+    // Stall watchdog (applied at startup)
+    final boolean watchdogEnabled;
+    final long watchdogStallMillis;
+    final long watchdogSampleIntervalMillis;
+    final int watchdogMaxStacks;
+    final int watchdogMaxFrames;
+    final int watchdogTopFrames;
+
+    // Plugin attribution (enabled is the state at startup; toggled by command)
+    final boolean attributionEnabled;
+    final int attributionRescanSeconds;
+
+    // Metrics exporter
+    final boolean exporterEnabled;
+    final String exporterBindAddress;
+    final int exporterPort;
+
+    // /opticore analyze
+    final int analysisTopChunks;
+    final int analysisTopEntityTypes;
+    final int analysisTopListeners;
+
+    // Memory
+    final double memoryShedThreshold;
+    final double memoryAggressiveThreshold;
+    final double memoryMaxPauseMillis;
+    final long memoryShedCooldownMillis;
+
+    // View distance
+    final int maxViewDistance;
+    final int minViewDistance;
+    final int minSimulationDistance;
+    final double viewStepDownMspt;
+    final double viewStepUpMspt;
+    final long viewDwellMillis;
+
+    // Entity culling; rules are built once and resubmitted as-is
+    final CullingEngine.Rule gentleCulling;
+    final CullingEngine.Rule moderateCulling;
+    final CullingEngine.Rule aggressiveCulling;
+    final long cullingBudgetNanos;
+
+    // Mob AI level of detail
+    final double mobAiRestoreRadius;
+    final double mobAiFrozenRadius;
+    final long mobAiBudgetNanos;
+
+    // Chunks
+    final long chunkActivityHalfLifeMillis;
+    final int chunkMinAgeSeconds;
+    final double chunkColdScore;
+    final int chunkUnloadBatch;
+    final long chunkUnloadBudgetNanos;
+    final int chunkUnloadMaxPerTick;
+    final double chunkUnloadTargetMspt;
+
+    // Spawn limits; rates are spawns per minute per region, indexed by
+    // SpawnGovernor category, EntityType ordinal (0 = category rate) or profile ordinal
+    final boolean spawnLimitsEnabled;
+    final int spawnRegionShift;
+    final double[] spawnCategoryRates = new double[SpawnGovernor.CATEGORY_NAMES.length];
+    final double[] spawnCategoryBursts = new double[SpawnGovernor.CATEGORY_NAMES.length];
+    final double[] spawnTypeRates = new double[EntityType.values().length];
+    final double[] spawnProfileScale = new double[AdaptiveOptimizer.OptimizationProfile.values().length];
+
+    private final Logger logger;
+
+    private Settings(FileConfiguration config, Logger logger) {
+        this.logger = logger;
+
+        showStatsOnJoin = config.getBoolean("show-stats-on-join", true);
+        mergeItems = config.getBoolean("optimization.merge-items", true);
+        itemMergeRadius = doubleIn(config, "item-merge.radius", 2.0, 0.5, 8.0);
+        itemMergeBudgetNanos = longIn(config, "item-merge.budget-nanos", 1000000L, 50000L, 50000000L);
+        smartChunkLoading = config.getBoolean("optimization.smart-chunk-loading", true);
+
+        String trigger = config.getString("thresholds.emergency-trigger", "tps");
+        if (!"tps".equalsIgnoreCase(trigger) && !"mspt".equalsIgnoreCase(trigger)) {
+            logger.warning("thresholds.emergency-trigger must be tps or mspt, not '" + trigger + "' - using tps");
+        }
+        msptEmergencyTrigger = "mspt".equalsIgnoreCase(trigger);
+        // Older configs had emergency-tps at the root
+        double legacyTps = config.getDouble("emergency-tps", 17.0);
+        emergencyTps = doubleIn(config, "thresholds.emergency-tps", legacyTps, 1.0, 20.0);
+        emergencyMspt = doubleIn(config, "thresholds.emergency-mspt", 45.0, 1.0, 10000.0);
+        emergencyCooldownMillis = longIn(config, "emergency-cooldown", 60000L, 0L, Long.MAX_VALUE);
+        maxEmergencyActivations = intIn(config, "max-emergency-activations", 3, 1, Integer.MAX_VALUE);
+        entityThreshold = intIn(config, "thresholds.entities", 5000, 0, Integer.MAX_VALUE);
+        chunkThreshold = intIn(config, "thresholds.chunks", 500, 0, Integer.MAX_VALUE);
+
+        optimizationIntervalTicks = longIn(config, "optimization-interval", 2400L, 20L, Long.MAX_VALUE);
+        metricsIntervalTicks = longIn(config, "metrics-interval", 100L, 20L, Long.MAX_VALUE);
+        msptWindowTicks = intIn(config, "mspt.window-ticks", 100, 20, 72000);
+
+        predictionEnabled = config.getBoolean("prediction.enabled", true);
+        predictionTargetMspt = doubleIn(config, "prediction.target-mspt", 50.0, 1.0, 10000.0);
+        predictionSmoothing = doubleIn(config, "prediction.smoothing", 0.3, 0.01, 1.0);
+        predictionWindowSeconds = intIn(config, "prediction.window-seconds", 30, 5, 900);
+        predictionHorizonSeconds = intIn(config, "prediction.horizon-seconds", 20, 1, 300);
+        predictionMinSlope = doubleIn(config, "prediction.min-slope", 0.05, 0.0, 1000.0);
+        predictionCooldownMillis = longIn(config, "prediction.cooldown", 60000L, 0L, Long.MAX_VALUE);
+
+        joinBurstEnabled = config.getBoolean("join-burst.enabled", true);
+        joinBurstWindowSeconds = intIn(config, "join-burst.window-seconds", 60, 5, 3600);
+        joinBurstThreshold = intIn(config, "join-burst.threshold", 20, 2, 10000);
+        joinBurstStartDistance = intIn(config, "join-burst.start-view-distance", 4, 2, 32);
+        joinBurstRampSeconds = intIn(config, "join-burst.ramp-seconds", 60, 1, 3600);
+        joinBurstDenyLogins = config.getBoolean("join-burst.deny-logins", false);
+        joinBurstDenyAboveMspt = doubleIn(config, "join-burst.deny-above-mspt", 50.0, 1.0, 10000.0);
+        joinBurstDenyMessage = config.getString("join-burst.deny-message",
+            "&eThe server is busy with a wave of joins - please retry in {seconds} seconds");
+
+        historyEnabled = config.getBoolean("history.enabled", true);
+        historySecondsRetentionHours = intIn(config, "history.retention.seconds-hours", 24, 1, 24 * 31);
+        historyMinutesRetentionDays = intIn(config, "history.retention.minutes-days", 30, 1, 3650);
+        historyHoursRetentionDays = intIn(config, "history.retention.hours-days", 365, 1, 3650);
+
+        pregenPauseWithPlayers = config.getBoolean("pregen.pause-with-players", true);
+        pregenTargetMspt = doubleIn(config, "pregen.target-mspt", 35.0, 1.0, 10000.0);
+        pregenPauseMspt = doubleIn(config, "pregen.pause-mspt", 45.0, pregenTargetMspt, 10000.0);
+        pregenMaxConcurrency = intIn(config, "pregen.max-concurrency", 16, 1, 256);
+        pregenBudgetNanos = longIn(config, "pregen.budget-nanos", 2000000L, 50000L, 50000000L);
+        pregenMaxRadius = intIn(config, "pregen.max-radius", 1000, 0, 30000);
+
+        feedbackWindowSeconds = intIn(config, "feedback.window-seconds", 15, 5, 60);
+        feedbackDelaySeconds = intIn(config, "feedback.delay-seconds", 5, 0, 60);
+        feedbackExploration = doubleIn(config, "feedback.exploration", 2.0, 0.0, 100.0);
+
+        jfrEnabled = config.getBoolean("jfr.enabled", true);
+        String jfrSettings = config.getString("jfr.settings", "default");
+        if (!"default".equals(jfrSettings) && !"profile".equals(jfrSettings)) {
+            logger.warning("jfr.settings must be default or profile, not '" + jfrSettings + "' - using default");
+            jfrSettings = "default";
+        }
+        jfrConfiguration = jfrSettings;
+        jfrMaxAgeSeconds = intIn(config, "jfr.max-age-seconds", 120, 10, 3600);
+        jfrMaxSizeMb = intIn(config, "jfr.max-size-mb", 64, 8, 4096);
+        jfrDumpCooldownSeconds = intIn(config, "jfr.dump-cooldown-seconds", 300, 0, 86400);
+        jfrKeepDumps = intIn(config, "jfr.keep-dumps", 10, 1, 1000);
+        jfrOverrunMspt = doubleIn(config, "jfr.overrun-mspt", 50.0, 1.0, 10000.0);
+
+        watchdogEnabled = config.getBoolean("watchdog.enabled", true);
+        watchdogStallMillis = longIn(config, "watchdog.stall-millis", 200L, 100L, 60000L);
+        watchdogSampleIntervalMillis = longIn(config, "watchdog.sample-interval-millis", 10L, 1L, 1000L);
+        watchdogMaxStacks = intIn(config, "watchdog.max-stacks", 2048, 64, 65536);
+        watchdogMaxFrames = intIn(config, "watchdog.max-frames", 8192, 256, 131072);
+        watchdogTopFrames = intIn(config, "watchdog.top-frames", 8, 1, 50);
+
+        attributionEnabled = config.getBoolean("attribution.enabled", true);
+        attributionRescanSeconds = intIn(config, "attribution.rescan-seconds", 30, 5, 3600);
+
+        exporterEnabled = config.getBoolean("metrics-exporter.enabled", false);
+        exporterBindAddress = config.getString("metrics-exporter.bind-address", "127.0.0.1");
+        exporterPort = intIn(config, "metrics-exporter.port", 9940, 1, 65535);
+
+        analysisTopChunks = intIn(config, "analysis.top-chunks", 5, 0, 100);
+        analysisTopEntityTypes = intIn(config, "analysis.top-entity-types", 8, 0, 100);
+        analysisTopListeners = intIn(config, "analysis.top-listeners", 8, 0, 100);
+
+        memoryShedThreshold = doubleIn(config, "memory.gc-threshold", 0.85, 0.1, 1.0);
+        memoryAggressiveThreshold = doubleIn(config, "memory.aggressive-gc-threshold", 0.9, memoryShedThreshold, 1.0);
+        memoryMaxPauseMillis = doubleIn(config, "memory.max-pause-ms", 200.0, 1.0, 60000.0);
+        memoryShedCooldownMillis = longIn(config, "memory.shed-cooldown", 30000L, 0L, Long.MAX_VALUE);
+
+        maxViewDistance = intIn(config, "default-view-distance", 10, 2, 32);
+        minViewDistance = intIn(config, "view-distance.min", 6, 2, maxViewDistance);
+        minSimulationDistance = intIn(config, "view-distance.simulation-min", 4, 2, maxViewDistance);
+        viewStepDownMspt = doubleIn(config, "view-distance.step-down-mspt", 45.0, 1.0, 10000.0);
+        viewStepUpMspt = doubleIn(config, "view-distance.step-up-mspt", 30.0, 0.0, viewStepDownMspt);
+        viewDwellMillis = longIn(config, "view-distance.dwell-ms", 30000L, 0L, Long.MAX_VALUE);
+
+        gentleCulling = new CullingEngine.Rule("gentle",
+            intIn(config, "entity-culling.gentle-threshold", 6000, 0, Integer.MAX_VALUE),
+            doubleIn(config, "entity-culling.gentle-radius", 32, 0, 512), -1);
+        moderateCulling = new CullingEngine.Rule("moderate",
+            intIn(config, "entity-culling.moderate-threshold", 2400, 0, Integer.MAX_VALUE),
+            doubleIn(config, "entity-culling.moderate-radius", 24, 0, 512), -1);
+        aggressiveCulling = new CullingEngine.Rule("aggressive",
+            intIn(config, "entity-culling.aggressive-threshold", 1200, 0, Integer.MAX_VALUE),
+            doubleIn(config, "entity-culling.aggressive-radius", 0, 0, 512), 48);
+        cullingBudgetNanos = longIn(config, "entity-culling.budget-nanos", 2000000L, 50000L, 50000000L);
+
+        mobAiRestoreRadius = doubleIn(config, "mob-ai.restore-radius", 32, 8, 256);
+        mobAiFrozenRadius = doubleIn(config, "mob-ai.frozen-radius", 96, mobAiRestoreRadius, 512);
+        mobAiBudgetNanos = longIn(config, "mob-ai.budget-nanos", 500000L, 50000L, 50000000L);
+
+        chunkActivityHalfLifeMillis = longIn(config, "chunks.activity-half-life", 300000L, 1000L, Long.MAX_VALUE);
+        chunkMinAgeSeconds = (int) (longIn(config, "chunks.unload-empty-after", 300000L, 0L, Integer.MAX_VALUE * 1000L) / 1000L);
+        chunkColdScore = doubleIn(config, "chunks.cold-score", 1.0, 0.0, Double.MAX_VALUE);
+        chunkUnloadBatch = intIn(config, "chunks.unload-batch", 32, 1, 4096);
+        chunkUnloadBudgetNanos = longIn(config, "chunks.unload-budget-nanos", 2000000L, 50000L, 50000000L);
+        chunkUnloadMaxPerTick = intIn(config, "chunks.unload-max-per-tick", 8, 1, 1024);
+        chunkUnloadTargetMspt = doubleIn(config, "chunks.unload-target-mspt", 40.0, 1.0, 50.0);
+
+        spawnLimitsEnabled = config.getBoolean("spawn-limits.enabled", true);
+        // Rounded down to a power of two so regions are a shift away from block coordinates
+        spawnRegionShift = 31 - Integer.numberOfLeadingZeros(intIn(config, "spawn-limits.region-chunks", 4, 1, 64));
+        double[] defaultRates = {600, 1200, 600, 1200};
+        for (int i = 0; i < spawnCategoryRates.length; i++) {
+            String path = "spawn-limits." + SpawnGovernor.CATEGORY_NAMES[i];
+            spawnCategoryRates[i] = doubleIn(config, path + ".per-minute", defaultRates[i], 1, 1000000);
+            spawnCategoryBursts[i] = doubleIn(config, path + ".burst", defaultRates[i] / 6, 1, 1000000);
+        }
+        ConfigurationSection types = config.getConfigurationSection("spawn-limits.types");
+        if (types != null) {
+            for (String name : types.getKeys(false)) {
+                try {
+                    spawnTypeRates[EntityType.valueOf(name.toUpperCase()).ordinal()] =
+                        doubleIn(config, "spawn-limits.types." + name, 0, 1, 1000000);
+                } catch (IllegalArgumentException e) {
+                    logger.warning("spawn-limits.types." + name + " is not an entity type - ignored");
+                }
+            }
+        }
+        double[] defaultScale = {1.0, 1.0, 0.5, 0.25};
+        for (AdaptiveOptimizer.OptimizationProfile profile : AdaptiveOptimizer.OptimizationProfile.values()) {
+            spawnProfileScale[profile.ordinal()] = doubleIn(config,
+                "spawn-limits.profile-scale." + profile.name().toLowerCase(), defaultScale[profile.ordinal()], 0.01, 1.0);
+        }
+    }
+
+    static Settings load(FileConfiguration config, Logger logger) {
+        return new Settings(config, logger);
+    }
+
+    private int intIn(FileConfiguration config, String path, int fallback, int min, int max) {
+        return (int) longIn(config, path, fallback, min, max);
+    }
+
+    private long longIn(FileConfiguration config, String path, long fallback, long min, long max) {
+        long value = config.getLong(path, fallback);
+        if (value < min || value > max) {
+            long clamped = Math.max(min, Math.min(max, value));
+            logger.warning(path + " is out of range (" + value + ") - using " + clamped);
+            return clamped;
+        }
+        return value;
+    }
+
+    private double doubleIn(FileConfiguration config, String path, double fallback, double min, double max) {
+        double value = config.getDouble(path, fallback);
+        if (!(value >= min && value <= max)) {
+            double clamped = Double.isNaN(value) ? fallback : Math.max(min, Math.min(max, value));
+            logger.warning(path + " is out of range (" + value + ") - using " + clamped);
+            return clamped;
+        }
+        return value;
+    }
+}
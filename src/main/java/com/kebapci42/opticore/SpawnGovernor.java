@@ -0,0 +1,333 @@
+package com.kebapci42.opticore;
+
+import com.kebapci42.opticore.util.LongObjectMap;
+import org.bukkit.ChatColor;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.ExperienceOrb;
+import org.bukkit.entity.Item;
+import org.bukkit.entity.LivingEntity;
+import org.bukkit.entity.Player;
+import org.bukkit.entity.Projectile;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.entity.CreatureSpawnEvent;
+import org.bukkit.event.entity.EntityDeathEvent;
+import org.bukkit.event.entity.EntitySpawnEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// Rate-limits spawns before they happen instead of culling afterwards.
+//
+// Every (chunk region, EntityType) pair gets a token bucket that refills at a per-minute
+// rate and holds at most a burst's worth of tokens; a spawn takes a token or is
+// cancelled. Rates come from the spawn category (creatures, items, experience,
+// projectiles) or a per-type override, scaled down as AdaptiveOptimizer's profile
+// escalates. Buckets refill lazily on access, so there is no per-tick work, and
+// everything lives on the main thread where spawn events fire, so no locking is
+// needed. Idle full buckets are evicted once a minute.
+//
+// Only environmental spawns are limited (mob farms, dispensers, explosions). Items,
+// orbs and projectiles a player caused are never cancelled: thrown items carry their
+// thrower, projectiles their shooter, and block breaks and deaths of players or of
+// mobs a player killed leave a short-lived mark at their position, so the drops and
+// XP spawned right after them in the same call are recognised.
+class SpawnGovernor implements Listener {
+    static final int CREATURES = 0;
+    static final int ITEMS = 1;
+    static final int EXPERIENCE = 2;
+    static final int PROJECTILES = 3;
+    static final String[] CATEGORY_NAMES = {"creatures", "items", "experience", "projectiles"};
+
+    private static final EntityType[] ENTITY_TYPES = EntityType.values();
+    private static final long IDLE_NANOS = 60_000_000_000L;
+    // Drops spawn in the same call as the break or death that caused them
+    private static final long MARK_NANOS = 100_000_000L;
+    private static final double MARK_RADIUS_SQUARED = 9.0;
+    private static final int MARKS = 64;
+
+    private final OptiCore plugin;
+    private final Map<UUID, LongObjectMap<Bucket>> worlds = new HashMap<>();
+    private final long[] deniedByType = new long[ENTITY_TYPES.length];
+    private final long[] deniedByCategory = new long[CATEGORY_NAMES.length];
+    // Ring of recent player-caused drop positions
+    private final World[] markWorld = new World[MARKS];
+    private final double[] markX = new double[MARKS];
+    private final double[] markZ = new double[MARKS];
+    private final long[] markTime = new long[MARKS];
+    private int markNext;
+
+    private static final class Bucket {
+        double tokens;
+        long lastRefill;
+        long denied;
+    }
+
+    SpawnGovernor(OptiCore plugin) {
+        this.plugin = plugin;
+    }
+
+    void start() {
+        plugin.getServer().getPluginManager().registerEvents(this, plugin);
+        new BukkitRunnable() {
+            @Override
+            public void run() {
+                evictIdle();
+            }
+        }.runTaskTimer(plugin, 1200L, 1200L);
+    }
+
+    // Creature, item and projectile spawn events all share EntitySpawnEvent's handler
+    // list, and experience orbs have no event of their own, so one handler sees them all
+    @EventHandler(priority = EventPriority.LOW, ignoreCancelled = true)
+    public void onEntitySpawn(EntitySpawnEvent event) {
+        Settings settings = plugin.getSettings();
+        if (!settings.spawnLimitsEnabled) return;
+        Entity entity = event.getEntity();
+        int category;
+        if (event instanceof CreatureSpawnEvent) {
+            if (isExempt(((CreatureSpawnEvent) event).getSpawnReason())) return;
+            category = CREATURES;
+        } else if (entity instanceof Item) {
+            if (((Item) entity).getThrower() != null || isPlayerDrop(event.getLocation())) return;
+            category = ITEMS;
+        } else if (entity instanceof ExperienceOrb) {
+            if (isPlayerDrop(event.getLocation())) return;
+            category = EXPERIENCE;
+        } else if (entity instanceof Projectile) {
+            if (((Projectile) entity).getShooter() instanceof Player) return;
+            category = PROJECTILES;
+        } else {
+            return;
+        }
+
+        int type = entity.getType().ordinal();
+        double perMinute = settings.spawnTypeRates[type] > 0 ? settings.spawnTypeRates[type] : settings.spawnCategoryRates[category];
+        double scale = settings.spawnProfileScale[plugin.getAdaptiveOptimizer().getCurrentProfile().ordinal()];
+        double capacity = Math.max(1.0, settings.spawnCategoryBursts[category] * scale);
+        double perNano = perMinute * scale / 60_000_000_000.0;
+
+        Location location = event.getLocation();
+        Bucket bucket = bucketFor(location.getWorld(), location.getBlockX(), location.getBlockZ(), type,
+            settings.spawnRegionShift, capacity);
+        long now = System.nanoTime();
+        bucket.tokens = Math.min(capacity, bucket.tokens + (now - bucket.lastRefill) * perNano);
+        bucket.lastRefill = now;
+        if (bucket.tokens >= 1.0) {
+            bucket.tokens -= 1.0;
+            return;
+        }
+        event.setCancelled(true);
+        bucket.denied++;
+        deniedByType[type]++;
+        deniedByCategory[category]++;
+        plugin.getActionCounters().increment(ActionCounters.Action.SPAWNS_DENIED);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBreak(BlockBreakEvent event) {
+        Location location = event.getBlock().getLocation();
+        mark(location.getWorld(), location.getX() + 0.5, location.getZ() + 0.5);
+    }
+
+    // Covers PlayerDeathEvent too, which shares this handler list
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onEntityDeath(EntityDeathEvent event) {
+        LivingEntity entity = event.getEntity();
+        if (entity instanceof Player || entity.getKiller() != null) {
+            Location location = entity.getLocation();
+            mark(location.getWorld(), location.getX(), location.getZ());
+        }
+    }
+
+    private void mark(World world, double x, double z) {
+        int slot = markNext++ & (MARKS - 1);
+        markWorld[slot] = world;
+        markX[slot] = x;
+        markZ[slot] = z;
+        markTime[slot] = System.nanoTime();
+    }
+
+    // Newest marks first; stops at the first one too old to have caused this spawn
+    private boolean isPlayerDrop(Location location) {
+        long now = System.nanoTime();
+        for (int i = 1; i <= Math.min(markNext, MARKS); i++) {
+            int slot = (markNext - i) & (MARKS - 1);
+            if (now - markTime[slot] > MARK_NANOS) return false;
+            double dx = markX[slot] - location.getX();
+            double dz = markZ[slot] - location.getZ();
+            if (markWorld[slot] == location.getWorld() && dx * dx + dz * dz <= MARK_RADIUS_SQUARED) return true;
+        }
+        return false;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        worlds.remove(event.getWorld().getUID());
+        // Marks must not keep the unloaded world alive
+        Arrays.fill(markWorld, null);
+    }
+
+    // Spawns a player or another plugin asked for explicitly are never limited, nor
+    // ones a player caused: cancelling a bred baby would still spend the feed and the
+    // cooldown, and a built golem would eat its blocks
+    private static boolean isExempt(CreatureSpawnEvent.SpawnReason reason) {
+        switch (reason) {
+            case CUSTOM:
+            case COMMAND:
+            case SPAWNER_EGG:
+            case BREEDING:
+            case OCELOT_BABY:
+            case EGG:
+            case BUILD_IRONGOLEM:
+            case BUILD_SNOWMAN:
+            case BUILD_WITHER:
+            case CURED:
+            case SHEARED:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private Bucket bucketFor(World world, int blockX, int blockZ, int type, int regionShift, double capacity) {
+        LongObjectMap<Bucket> buckets = worlds.get(world.getUID());
+        if (buckets == null) {
+            buckets = new LongObjectMap<>();
+            worlds.put(world.getUID(), buckets);
+        }
+        long key = pack(blockX >> (4 + regionShift), blockZ >> (4 + regionShift), type);
+        Bucket bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = new Bucket();
+            bucket.tokens = capacity;
+            bucket.lastRefill = System.nanoTime();
+            buckets.put(key, bucket);
+        }
+        return bucket;
+    }
+
+    // Region x, z (22 bits each) | entity type ordinal (20 bits)
+    private static long pack(int regionX, int regionZ, int type) {
+        return ((long) (regionX & 0x3FFFFF) << 42) | ((long) (regionZ & 0x3FFFFF) << 20) | type;
+    }
+
+    private static int regionX(long key) {
+        return (int) (key >> 42) << 10 >> 10;
+    }
+
+    private static int regionZ(long key) {
+        return (int) (key >>> 20) << 10 >> 10;
+    }
+
+    // A bucket untouched for a minute has refilled completely and holds no information
+    // beyond its denial count, which only matters while the region is still active
+    private void evictIdle() {
+        long now = System.nanoTime();
+        for (LongObjectMap<Bucket> buckets : worlds.values()) {
+            int slot = 0;
+            while (slot < buckets.capacity()) {
+                Bucket bucket = buckets.valueAt(slot);
+                if (bucket != null && now - bucket.lastRefill > IDLE_NANOS) {
+                    // Backward-shift deletion may move a later entry into this slot
+                    buckets.remove(buckets.keyAt(slot));
+                    continue;
+                }
+                slot++;
+            }
+        }
+    }
+
+    // Main thread: copies what /opticore analyze needs so ranking can happen off-thread
+    DenialSnapshot captureDenials() {
+        List<String> regionWorlds = new ArrayList<>();
+        List<long[]> regionEntries = new ArrayList<>();
+        for (World world : plugin.getServer().getWorlds()) {
+            LongObjectMap<Bucket> buckets = worlds.get(world.getUID());
+            if (buckets == null) continue;
+            for (int slot = 0; slot < buckets.capacity(); slot++) {
+                Bucket bucket = buckets.valueAt(slot);
+                if (bucket != null && bucket.denied > 0) {
+                    regionWorlds.add(world.getName());
+                    regionEntries.add(new long[] {buckets.keyAt(slot), bucket.denied});
+                }
+            }
+        }
+        return new DenialSnapshot(deniedByType.clone(), deniedByCategory.clone(),
+            regionWorlds.toArray(new String[0]), regionEntries.toArray(new long[0][]),
+            plugin.getSettings().spawnRegionShift);
+    }
+
+    static final class DenialSnapshot {
+        private final long[] byType;
+        private final long[] byCategory;
+        private final String[] regionWorlds;
+        private final long[][] regionEntries; // {key, denied}
+        private final int regionShift;
+
+        private DenialSnapshot(long[] byType, long[] byCategory, String[] regionWorlds, long[][] regionEntries,
+                               int regionShift) {
+            this.byType = byType;
+            this.byCategory = byCategory;
+            this.regionWorlds = regionWorlds;
+            this.regionEntries = regionEntries;
+            this.regionShift = regionShift;
+        }
+
+        void appendReport(StringBuilder report, int topTypes, int topRegions) {
+            long total = 0;
+            for (long denied : byCategory) {
+                total += denied;
+            }
+            report.append(ChatColor.AQUA).append("Spawns denied: ").append(ChatColor.YELLOW).append(total);
+            if (total == 0) {
+                report.append('\n');
+                return;
+            }
+            report.append(ChatColor.GRAY).append(" (");
+            for (int i = 0; i < byCategory.length; i++) {
+                if (i > 0) report.append(", ");
+                report.append(CATEGORY_NAMES[i]).append(' ').append(byCategory[i]);
+            }
+            report.append(")\n");
+
+            long[] ranked = new long[byType.length];
+            int n = 0;
+            for (int type = 0; type < byType.length; type++) {
+                if (byType[type] > 0) {
+                    ranked[n++] = (byType[type] << 20) | type;
+                }
+            }
+            Arrays.sort(ranked, 0, n);
+            for (int i = n - 1; i >= Math.max(0, n - topTypes); i--) {
+                report.append(ChatColor.WHITE).append("  ").append(ENTITY_TYPES[(int) (ranked[i] & 0xFFFFF)].name())
+                    .append(": ").append(ChatColor.YELLOW).append(ranked[i] >>> 20).append('\n');
+            }
+
+            Integer[] order = new Integer[regionEntries.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Long.compare(regionEntries[b][1], regionEntries[a][1]));
+            int blocks = 16 << regionShift;
+            for (int i = 0; i < Math.min(topRegions, order.length); i++) {
+                long key = regionEntries[order[i]][0];
+                report.append(ChatColor.WHITE).append("  ").append(regionWorlds[order[i]])
+                    .append(" region at block ").append(regionX(key) * blocks).append(", ").append(regionZ(key) * blocks)
+                    .append(" (").append(ENTITY_TYPES[(int) (key & 0xFFFFF)].name()).append("): ")
+                    .append(ChatColor.YELLOW).append(regionEntries[order[i]][1]).append('\n');
+            }
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.kebapci42.opticore;
+
+import com.destroystokyo.paper.event.server.ServerTickStartEvent;
+import com.kebapci42.opticore.util.FoldedStacks;
+import org.bukkit.ChatColor;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+// Shows what the main thread was doing during a freeze.
+//
+// The main thread stamps a heartbeat at the start of every tick (ServerTickStartEvent
+// on Paper, a one-tick task elsewhere). A watchdog thread checks it every
+// sample-interval, armed by the first heartbeat so startup is never a stall; once the
+// current tick has run longer than stall-millis it samples the main thread's stack at
+// that interval until the tick ends. Samples are folded
+// into a FoldedStacks table sized at startup, so memory is bounded and a healthy
+// server costs one volatile read per interval. When a stall ends the accumulated
+// stacks are written to stalls.folded, which flame graph tools (flamegraph.pl,
+// speedscope) open directly; /opticore analyze lists the hottest frames.
+// The table is guarded by its own lock, taken by the watchdog and by readers.
+class StallWatchdog {
+    private static final int MAX_DEPTH = 256;
+    private static final int RECENT_STALLS = 8;
+
+    private final OptiCore plugin;
+    private final File foldedFile;
+    private final FoldedStacks stacks;
+    private final long[] recentStart = new long[RECENT_STALLS];
+    private final long[] recentMillis = new long[RECENT_STALLS];
+    private final int[] recentSamples = new int[RECENT_STALLS];
+    private int recentCount;
+    private long stallCount;
+    private volatile long tickStartNanos;
+    private volatile Thread watchdog;
+    private Thread mainThread;
+
+    StallWatchdog(OptiCore plugin) {
+        this.plugin = plugin;
+        this.foldedFile = new File(plugin.getDataFolder(), "stalls.folded");
+        Settings settings = plugin.getSettings();
+        this.stacks = new FoldedStacks(settings.watchdogMaxFrames, settings.watchdogMaxStacks, MAX_DEPTH);
+    }
+
+    // Called from onEnable, on the main thread
+    void start() {
+        mainThread = Thread.currentThread();
+        // Left at 0 until the first tick: the rest of startup (other plugins enabling,
+        // world loading) is not a stall
+        tickStartNanos = 0;
+        if (plugin.isPaperServer()) {
+            plugin.getServer().getPluginManager().registerEvents(new PaperTickListener(), plugin);
+        } else {
+            new BukkitRunnable() {
+                @Override
+                public void run() {
+                    tickStartNanos = System.nanoTime();
+                }
+            }.runTaskTimer(plugin, 1L, 1L);
+        }
+        Thread thread = new Thread(this::watch, "OptiCore-Watchdog");
+        thread.setDaemon(true);
+        watchdog = thread;
+        thread.start();
+    }
+
+    void stop() {
+        Thread thread = watchdog;
+        if (thread == null) return;
+        watchdog = null;
+        thread.interrupt();
+    }
+
+    private void watch() {
+        Settings settings = plugin.getSettings();
+        long stallNanos = settings.watchdogStallMillis * 1_000_000L;
+        long stalledTick = 0;
+        int stallSamples = 0;
+        try {
+            while (watchdog == Thread.currentThread()) {
+                Thread.sleep(settings.watchdogSampleIntervalMillis);
+                long tickStart = tickStartNanos;
+                if (tickStart == 0) continue; // No tick yet
+                if (stalledTick != 0 && tickStart != stalledTick) {
+                    // The next tick started: the stall is over
+                    finishStall(stalledTick, tickStart, stallSamples);
+                    stalledTick = 0;
+                    stallSamples = 0;
+                }
+                if (System.nanoTime() - tickStart < stallNanos) continue;
+                StackTraceElement[] trace = mainThread.getStackTrace();
+                if (tickStartNanos != tickStart) continue; // Ended while sampling; not part of the stall
+                if (stalledTick == 0) {
+                    stalledTick = tickStart;
+                }
+                synchronized (stacks) {
+                    stacks.record(trace);
+                }
+                stallSamples++;
+            }
+        } catch (InterruptedException e) {
+            // Plugin disabled
+        }
+    }
+
+    private void finishStall(long tickStart, long nextTickStart, int samples) {
+        long millis = (nextTickStart - tickStart) / 1_000_000L;
+        StringBuilder folded = new StringBuilder();
+        synchronized (stacks) {
+            int slot = recentCount++ % RECENT_STALLS;
+            recentStart[slot] = System.currentTimeMillis() - millis;
+            recentMillis[slot] = millis;
+            recentSamples[slot] = samples;
+            stallCount++;
+            stacks.appendFolded(folded);
+        }
+        plugin.getLogger().warning("Main thread stalled for " + millis + "ms - " + samples
+            + " stack samples added to " + foldedFile.getName());
+        // Written next to the target and moved over it, so viewers never see a partial file
+        File temp = new File(foldedFile.getPath() + ".tmp");
+        try {
+            Files.write(temp.toPath(), folded.toString().getBytes(StandardCharsets.UTF_8));
+            Files.move(temp.toPath(), foldedFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            plugin.getLogger().warning("Could not write " + foldedFile.getName() + " - " + e.getMessage());
+        }
+    }
+
+    void appendReport(StringBuilder report, int topFrames) {
+        synchronized (stacks) {
+            if (stallCount == 0) {
+                report.append(ChatColor.AQUA).append("Main thread stalls: ").append(ChatColor.GREEN)
+                    .append("none over ").append(plugin.getSettings().watchdogStallMillis).append("ms\n");
+                return;
+            }
+            report.append(ChatColor.AQUA).append("Main thread stalls: ").append(ChatColor.WHITE)
+                .append(stallCount).append(" over ").append(plugin.getSettings().watchdogStallMillis)
+                .append("ms, ").append(stacks.getSamples()).append(" samples");
+            if (stacks.getDropped() > 0) {
+                report.append(ChatColor.GRAY).append(" (").append(stacks.getDropped())
+                    .append(" dropped, stack table full)");
+            }
+            report.append('\n');
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < Math.min(recentCount, RECENT_STALLS); i++) {
+                int slot = (recentCount - 1 - i) % RECENT_STALLS;
+                report.append(ChatColor.GRAY).append(String.format("  %dms, %d samples, %ds ago%n",
+                    recentMillis[slot], recentSamples[slot], (now - recentStart[slot]) / 1000));
+            }
+            appendTopFrames(report, "Hottest frames (innermost)", stacks.frameCounts(true), topFrames);
+            appendTopFrames(report, "Hottest frames (on stack)", stacks.frameCounts(false), topFrames);
+            report.append(ChatColor.GRAY).append("  Flame graph input: ").append(foldedFile.getName()).append('\n');
+        }
+    }
+
+    private void appendTopFrames(StringBuilder report, String title, long[] counts, int limit) {
+        long total = Math.max(1, stacks.getSamples() - stacks.getDropped());
+        report.append(ChatColor.WHITE).append("  ").append(title).append(":\n");
+        // Partial selection: the report only needs a handful of the frames
+        boolean[] taken = new boolean[counts.length];
+        for (int n = 0; n < limit; n++) {
+            int best = -1;
+            for (int id = 0; id < counts.length; id++) {
+                if (!taken[id] && counts[id] > 0 && (best < 0 || counts[id] > counts[best])) {
+                    best = id;
+                }
+            }
+            if (best < 0) break;
+            taken[best] = true;
+            report.append(ChatColor.YELLOW).append(String.format("    %5.1f%% ", counts[best] * 100.0 / total))
+                .append(ChatColor.GRAY).append(stacks.getFrameLabel(best)).append('\n');
+        }
+    }
+
+    // Only instantiated on Paper, so the Paper event class is never loaded elsewhere
+    private final class PaperTickListener implements Listener {
+        @EventHandler(priority = EventPriority.LOWEST)
+        public void onTickStart(ServerTickStartEvent event) {
+            tickStartNanos = System.nanoTime();
+        }
+    }
+}
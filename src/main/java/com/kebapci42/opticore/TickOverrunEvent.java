@@ -0,0 +1,34 @@
+package com.kebapci42.opticore;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+// Flight recorder event for a tick over the overrun threshold. Only loaded through
+// FlightRecording, which checks that the JVM has JFR first. The tick is reported after
+// it ended, so its length is a field; "duration" is reserved by jdk.jfr.Event itself.
+@Name("com.kebapci42.opticore.TickOverrun")
+@Label("Tick Overrun")
+@Category("OptiCore")
+@Description("A server tick that took longer than jfr.overrun-mspt")
+@StackTrace(false)
+class TickOverrunEvent extends jdk.jfr.Event {
+    @Label("Tick Duration")
+    @Timespan(Timespan.MICROSECONDS)
+    long tickDuration;
+
+    @Label("Exact")
+    @Description("False when measured as the interval between ticks (non-Paper servers)")
+    boolean exact;
+
+    static void emit(double tickMillis, boolean exact) {
+        TickOverrunEvent event = new TickOverrunEvent();
+        if (!event.shouldCommit()) return;
+        event.tickDuration = (long) (tickMillis * 1000.0);
+        event.exact = exact;
+        event.commit();
+    }
+}
@@ -0,0 +1,108 @@
+package com.kebapci42.opticore;
+
+import com.destroystokyo.paper.event.server.ServerTickEndEvent;
+import com.kebapci42.opticore.util.LogHistogram;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.scheduler.BukkitRunnable;
+
+// Records the duration of every server tick into log-bucketed histograms.
+//
+// On Paper the exact tick duration comes from ServerTickEndEvent. Elsewhere a
+// one-tick repeating task measures the interval between consecutive runs, which
+// tracks MSPT once ticks overrun their 50ms slot. Samples are recorded on the main
+// thread without allocation; every windowTicks ticks the window is published as an
+// immutable copy for readers on other threads.
+class TickSampler {
+    private static final long MAX_TRACKED_MICROS = 60_000_000L;
+    private static final int PRECISION_BITS = 5;
+
+    private final OptiCore plugin;
+    private final LogHistogram window = new LogHistogram(MAX_TRACKED_MICROS, PRECISION_BITS);
+    private final LogHistogram lifetime = new LogHistogram(MAX_TRACKED_MICROS, PRECISION_BITS);
+    private volatile LogHistogram lastWindow = window.copy();
+    private volatile LogHistogram lifetimeSnapshot = lifetime.copy();
+    private final int windowTicks;
+    private int ticksInWindow;
+    private double secondSumMs;
+    private int secondTicks;
+    private boolean precise;
+
+    TickSampler(OptiCore plugin, int windowTicks) {
+        this.plugin = plugin;
+        this.windowTicks = Math.max(20, windowTicks);
+    }
+
+    void start() {
+        if (plugin.isPaperServer()) {
+            precise = true;
+            plugin.getServer().getPluginManager().registerEvents(new PaperTickListener(), plugin);
+            return;
+        }
+        new BukkitRunnable() {
+            private long lastRun = 0;
+
+            @Override
+            public void run() {
+                long now = System.nanoTime();
+                if (lastRun != 0) {
+                    record((now - lastRun) / 1_000_000.0);
+                }
+                lastRun = now;
+            }
+        }.runTaskTimer(plugin, 1L, 1L);
+    }
+
+    void record(double tickMillis) {
+        long micros = (long) (tickMillis * 1000.0);
+        window.record(micros);
+        lifetime.record(micros);
+        plugin.getFlightRecording().tickOverrun(tickMillis, precise);
+        secondSumMs += tickMillis;
+        secondTicks++;
+        if (++ticksInWindow >= windowTicks) {
+            lastWindow = window.copy();
+            lifetimeSnapshot = lifetime.copy();
+            window.reset();
+            ticksInWindow = 0;
+        }
+    }
+
+    // Mean MSPT since the previous call; main thread only
+    double drainMeanMillis() {
+        if (secondTicks == 0) return 0;
+        double mean = secondSumMs / secondTicks;
+        secondSumMs = 0;
+        secondTicks = 0;
+        return mean;
+    }
+
+    boolean isPrecise() {
+        return precise;
+    }
+
+    int getWindowTicks() {
+        return windowTicks;
+    }
+
+    LogHistogram getLastWindow() {
+        return lastWindow;
+    }
+
+    LogHistogram getLifetime() {
+        return lifetimeSnapshot;
+    }
+
+    double getWindowPercentileMillis(double percentile) {
+        return lastWindow.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    // Only instantiated on Paper, so the Paper event class is never loaded elsewhere
+    private final class PaperTickListener implements Listener {
+        @EventHandler(priority = EventPriority.MONITOR)
+        public void onTickEnd(ServerTickEndEvent event) {
+            record(event.getTickDuration());
+        }
+    }
+}
@@ -0,0 +1,411 @@
+package com.kebapci42.opticore;
+
+import org.bukkit.ChatColor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Performance history that survives restarts, in memory-mapped fixed-record files.
+//
+// Each tier (1s, 1m, 1h) is a series of append-only segment files named after their
+// first timestamp. A segment is sized up front and mapped once; a record is an epoch
+// second followed by FIELDS floats, and the record count sits in the header so
+// readers never look past what has been written. The 1s tier is fed once a second;
+// every completed minute is averaged into the 1m tier and every hour into the 1h tier,
+// with WORST_MSPT keeping the maximum instead of the mean. Segments past a tier's
+// retention are deleted when the tier rolls over.
+//
+// The main thread only hands values over; all file work happens on one writer thread.
+// Queries map the segments overlapping the range read-only and binary search for the
+// first record, so only the pages in range are touched. Safe to query from any thread.
+class TimeSeriesStore {
+    static final int TPS = 0;
+    static final int MSPT = 1;
+    static final int WORST_MSPT = 2; // Worst one-second mean within the record
+    static final int HEAP_MB = 3;
+    static final int OLD_GEN = 4;
+    static final int ENTITIES = 5;
+    static final int CHUNKS = 6;
+    static final int PLAYERS = 7;
+    static final int FIELDS = 8;
+
+    // magic (4) | version (2) | fields (2) | record count (4) | reserved (4)
+    private static final int MAGIC = 0x4F435453;
+    private static final short VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int COUNT_OFFSET = 8;
+    private static final int RECORD_BYTES = 8 + FIELDS * 4;
+
+    enum Tier {
+        SECONDS("1s", 1, 3600),    // One hour per segment
+        MINUTES("1m", 60, 1440),   // One day
+        HOURS("1h", 3600, 720);    // Thirty days
+
+        final String label;
+        final long step;
+        final int segmentRecords;
+
+        Tier(String label, long step, int segmentRecords) {
+            this.label = label;
+            this.step = step;
+            this.segmentRecords = segmentRecords;
+        }
+    }
+
+    private final OptiCore plugin;
+    private final File directory;
+    private final long[] retentionSeconds;
+    private final Series[] series = new Series[Tier.values().length];
+    private ExecutorService writer;
+
+    // One tier's write state; only touched on the writer thread
+    private final class Series {
+        final Tier tier;
+        final double[] sums = new double[FIELDS];
+        final float[] record = new float[FIELDS];
+        int accumulated;
+        long bucket = -1;
+        MappedByteBuffer segment;
+        int count;
+        long lastTimestamp = Long.MIN_VALUE;
+
+        Series(Tier tier) {
+            this.tier = tier;
+        }
+    }
+
+    TimeSeriesStore(OptiCore plugin, File directory) {
+        this.plugin = plugin;
+        this.directory = directory;
+        Settings settings = plugin.getSettings();
+        this.retentionSeconds = new long[] {
+            settings.historySecondsRetentionHours * 3600L,
+            settings.historyMinutesRetentionDays * 86400L,
+            settings.historyHoursRetentionDays * 86400L
+        };
+        for (Tier tier : Tier.values()) {
+            series[tier.ordinal()] = new Series(tier);
+        }
+    }
+
+    void start() {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            plugin.getLogger().warning("History directory " + directory + " could not be created - history disabled");
+            return;
+        }
+        writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "OptiCore-History");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.execute(() -> {
+            for (Series s : series) {
+                resume(s);
+            }
+        });
+    }
+
+    void stop() {
+        ExecutorService target = writer;
+        if (target == null) return;
+        writer = null;
+        target.execute(() -> {
+            for (Series s : series) {
+                if (s.segment != null) {
+                    s.segment.force();
+                    s.segment = null;
+                }
+            }
+        });
+        target.shutdown();
+        try {
+            target.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Main thread, once a second
+    void record(long epochSecond, double tps, double mspt, MetricsSnapshot metrics) {
+        ExecutorService target = writer;
+        if (target == null) return;
+        float[] values = new float[FIELDS];
+        values[TPS] = (float) tps;
+        values[MSPT] = (float) mspt;
+        values[WORST_MSPT] = (float) mspt;
+        values[HEAP_MB] = metrics.memoryUsed / (1024f * 1024f);
+        values[OLD_GEN] = (float) metrics.oldGenOccupancy;
+        values[ENTITIES] = metrics.entities;
+        values[CHUNKS] = metrics.chunks;
+        values[PLAYERS] = metrics.players;
+        try {
+            target.execute(() -> offer(0, epochSecond, values));
+        } catch (RuntimeException ignored) {
+            // Store shutting down
+        }
+    }
+
+    // Writer thread: the 1s tier writes every sample, coarser tiers average complete buckets
+    private void offer(int index, long timestamp, float[] values) {
+        Series s = series[index];
+        if (s.tier.step == 1) {
+            write(s, timestamp, values);
+            if (index + 1 < series.length) {
+                offer(index + 1, timestamp, values);
+            }
+            return;
+        }
+        long bucket = timestamp - Math.floorMod(timestamp, s.tier.step);
+        if (bucket != s.bucket && s.accumulated > 0) {
+            for (int f = 0; f < FIELDS; f++) {
+                s.record[f] = f == WORST_MSPT ? s.record[f] : (float) (s.sums[f] / s.accumulated);
+            }
+            float[] completed = s.record.clone();
+            write(s, s.bucket, completed);
+            Arrays.fill(s.sums, 0);
+            s.accumulated = 0;
+            if (index + 1 < series.length) {
+                offer(index + 1, s.bucket, completed);
+            }
+        }
+        if (s.accumulated == 0) {
+            s.record[WORST_MSPT] = values[WORST_MSPT];
+        }
+        s.bucket = bucket;
+        for (int f = 0; f < FIELDS; f++) {
+            s.sums[f] += values[f];
+        }
+        s.record[WORST_MSPT] = Math.max(s.record[WORST_MSPT], values[WORST_MSPT]);
+        s.accumulated++;
+    }
+
+    private void write(Series s, long timestamp, float[] values) {
+        if (timestamp <= s.lastTimestamp) return; // Clock stepped back; keep the file ordered
+        if (s.segment == null || s.count == s.tier.segmentRecords) {
+            if (!roll(s, timestamp)) return;
+        }
+        int offset = HEADER_BYTES + s.count * RECORD_BYTES;
+        s.segment.putLong(offset, timestamp);
+        for (int f = 0; f < FIELDS; f++) {
+            s.segment.putFloat(offset + 8 + f * 4, values[f]);
+        }
+        // Publish the record only once it is complete
+        s.segment.putInt(COUNT_OFFSET, ++s.count);
+        s.lastTimestamp = timestamp;
+    }
+
+    private boolean roll(Series s, long timestamp) {
+        if (s.segment != null) {
+            s.segment.force();
+            s.segment = null;
+        }
+        File file = new File(directory, s.tier.label + "-" + timestamp + ".dat");
+        long size = HEADER_BYTES + (long) s.tier.segmentRecords * RECORD_BYTES;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(size);
+            MappedByteBuffer segment = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            segment.putInt(0, MAGIC);
+            segment.putShort(4, VERSION);
+            segment.putShort(6, (short) FIELDS);
+            segment.putInt(COUNT_OFFSET, 0);
+            s.segment = segment;
+            s.count = 0;
+        } catch (IOException e) {
+            plugin.getLogger().warning("Could not create history segment " + file.getName() + " - " + e.getMessage());
+            return false;
+        }
+        enforceRetention(s.tier, timestamp);
+        return true;
+    }
+
+    // A segment can go once the segment after it starts before the retention cutoff
+    private void enforceRetention(Tier tier, long now) {
+        long cutoff = now - retentionSeconds[tier.ordinal()];
+        long[] starts = segmentStarts(tier);
+        for (int i = 0; i + 1 < starts.length && starts[i + 1] <= cutoff; i++) {
+            File file = segmentFile(tier, starts[i]);
+            if (!file.delete()) {
+                plugin.getLogger().warning("Could not delete expired history segment " + file.getName());
+            }
+        }
+    }
+
+    // Continue the newest segment of a tier after a restart if it is intact and has room
+    private void resume(Series s) {
+        long[] starts = segmentStarts(s.tier);
+        if (starts.length == 0) return;
+        File file = segmentFile(s.tier, starts[starts.length - 1]);
+        long size = HEADER_BYTES + (long) s.tier.segmentRecords * RECORD_BYTES;
+        if (file.length() != size) return;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            MappedByteBuffer segment = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            int count = validCount(segment, s.tier);
+            if (count <= 0 || count == s.tier.segmentRecords) return;
+            s.segment = segment;
+            s.count = count;
+            s.lastTimestamp = segment.getLong(HEADER_BYTES + (count - 1) * RECORD_BYTES);
+        } catch (IOException e) {
+            plugin.getLogger().warning("Could not reopen history segment " + file.getName() + " - " + e.getMessage());
+        }
+    }
+
+    private static int validCount(MappedByteBuffer segment, Tier tier) {
+        if (segment.getInt(0) != MAGIC || segment.getShort(4) != VERSION || segment.getShort(6) != FIELDS) return -1;
+        int count = segment.getInt(COUNT_OFFSET);
+        return count < 0 || count > tier.segmentRecords ? -1 : count;
+    }
+
+    private long[] segmentStarts(Tier tier) {
+        String prefix = tier.label + "-";
+        String[] names = directory.list((dir, name) -> name.startsWith(prefix) && name.endsWith(".dat"));
+        if (names == null) return new long[0];
+        long[] starts = new long[names.length];
+        int n = 0;
+        for (String name : names) {
+            try {
+                starts[n++] = Long.parseLong(name.substring(prefix.length(), name.length() - 4));
+            } catch (NumberFormatException ignored) {
+                // Not ours
+            }
+        }
+        starts = Arrays.copyOf(starts, n);
+        Arrays.sort(starts);
+        return starts;
+    }
+
+    private File segmentFile(Tier tier, long start) {
+        return new File(directory, tier.label + "-" + start + ".dat");
+    }
+
+    // Aggregate over [from, to): means, except WORST_MSPT which is the maximum
+    static final class Summary {
+        final Tier tier;
+        final int records;
+        final double[] values;
+
+        private Summary(Tier tier, int records, double[] values) {
+            this.tier = tier;
+            this.records = records;
+            this.values = values;
+        }
+    }
+
+    // The finest tier whose retention still covers the start of the range, preferring
+    // coarser tiers for long ranges so a query reads at most a few thousand records
+    Summary summarize(long from, long to, long now) {
+        long length = to - from;
+        Tier tier = length <= 7200 ? Tier.SECONDS : length <= 7 * 86400 ? Tier.MINUTES : Tier.HOURS;
+        while (tier != Tier.HOURS && now - from > retentionSeconds[tier.ordinal()]) {
+            tier = Tier.values()[tier.ordinal() + 1];
+        }
+        return summarize(tier, from, to);
+    }
+
+    private Summary summarize(Tier tier, long from, long to) {
+        double[] values = new double[FIELDS];
+        int records = 0;
+        long[] starts = segmentStarts(tier);
+        for (int i = 0; i < starts.length; i++) {
+            if (starts[i] >= to) break;
+            if (i + 1 < starts.length && starts[i + 1] <= from) continue;
+            File file = segmentFile(tier, starts[i]);
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                int count = validCount(segment, tier);
+                if (count <= 0) continue;
+                for (int r = firstAtOrAfter(segment, count, from); r < count; r++) {
+                    int offset = HEADER_BYTES + r * RECORD_BYTES;
+                    if (segment.getLong(offset) >= to) break;
+                    for (int f = 0; f < FIELDS; f++) {
+                        float value = segment.getFloat(offset + 8 + f * 4);
+                        values[f] = f == WORST_MSPT ? Math.max(values[f], value) : values[f] + value;
+                    }
+                    records++;
+                }
+            } catch (IOException e) {
+                // Deleted by retention meanwhile, or unreadable; the rest of the range still counts
+            }
+        }
+        if (records > 0) {
+            for (int f = 0; f < FIELDS; f++) {
+                if (f != WORST_MSPT) {
+                    values[f] /= records;
+                }
+            }
+        }
+        return new Summary(tier, records, values);
+    }
+
+    private static int firstAtOrAfter(MappedByteBuffer segment, int count, long timestamp) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (segment.getLong(HEADER_BYTES + mid * RECORD_BYTES) < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Off-thread: the range ending now next to the same range a day (or for long
+    // ranges, one range length) earlier
+    void appendReport(StringBuilder report, long rangeSeconds) {
+        long now = System.currentTimeMillis() / 1000;
+        long shift = Math.max(86400, rangeSeconds);
+        Summary current = summarize(now - rangeSeconds, now, now);
+        Summary earlier = summarize(now - shift - rangeSeconds, now - shift, now);
+        report.append(ChatColor.AQUA).append("History, last ").append(formatDuration(rangeSeconds)).append(":\n");
+        appendSummary(report, "  Now", current);
+        appendSummary(report, rangeSeconds < 86400 ? "  Same time yesterday" : "  Previous " + formatDuration(rangeSeconds), earlier);
+    }
+
+    private static void appendSummary(StringBuilder report, String label, Summary summary) {
+        report.append(ChatColor.WHITE).append(label).append(": ");
+        if (summary.records == 0) {
+            report.append(ChatColor.GRAY).append("no data\n");
+            return;
+        }
+        double[] v = summary.values;
+        report.append(ChatColor.YELLOW).append(String.format(
+            "TPS %.2f, MSPT %.1f (worst %.1f), heap %.0fMB, old gen %.0f%%, %.0f entities, %.0f chunks, %.1f players",
+            v[TPS], v[MSPT], v[WORST_MSPT], v[HEAP_MB], v[OLD_GEN] * 100, v[ENTITIES], v[CHUNKS], v[PLAYERS]))
+            .append(ChatColor.GRAY).append(" [").append(summary.records).append(" x ").append(summary.tier.label).append("]\n");
+    }
+
+    // "90s", "30m", "6h", "7d"; -1 if unparseable
+    static long parseDuration(String text) {
+        if (text.length() < 2) return -1;
+        long unit;
+        switch (Character.toLowerCase(text.charAt(text.length() - 1))) {
+            case 's': unit = 1; break;
+            case 'm': unit = 60; break;
+            case 'h': unit = 3600; break;
+            case 'd': unit = 86400; break;
+            default: return -1;
+        }
+        try {
+            long amount = Long.parseLong(text.substring(0, text.length() - 1));
+            return amount > 0 && amount <= 3650L * 86400 / unit ? amount * unit : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    static String formatDuration(long seconds) {
+        if (seconds % 86400 == 0) return seconds / 86400 + "d";
+        if (seconds % 3600 == 0) return seconds / 3600 + "h";
+        if (seconds % 60 == 0) return seconds / 60 + "m";
+        return seconds + "s";
+    }
+}
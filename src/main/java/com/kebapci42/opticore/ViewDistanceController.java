@@ -0,0 +1,126 @@
+package com.kebapci42.opticore;
+
+import org.bukkit.World;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+// Closed-loop view/simulation distance control driven by p95 MSPT.
+//
+// Distances move one step at a time and one world per evaluation. Stepping down
+// happens above step-down-mspt, stepping up only below the lower step-up-mspt, and a
+// world that just changed stays put for dwell-ms, so the loop settles instead of
+// oscillating. Every change is logged and kept for /opticore analyze.
+class ViewDistanceController {
+    private static final int RECENT_CHANGES = 10;
+
+    private final OptiCore plugin;
+    private final Map<UUID, WorldState> states = new HashMap<>();
+    private final ConcurrentLinkedDeque<String> recentChanges = new ConcurrentLinkedDeque<>();
+    private boolean enabled;
+
+    private static final class WorldState {
+        int view;
+        int simulation;
+        long lastChange;
+    }
+
+    ViewDistanceController(OptiCore plugin) {
+        this.plugin = plugin;
+    }
+
+    void start() {
+        // Per-world distance setters are Paper API
+        if (!OptiCore.hasMethod(World.class, "setViewDistance", int.class)
+                || !OptiCore.hasMethod(World.class, "setSimulationDistance", int.class)) {
+            plugin.getLogger().info("View distance control needs World#setViewDistance (Paper) - disabled");
+            return;
+        }
+        enabled = true;
+        new BukkitRunnable() {
+            @Override
+            public void run() {
+                evaluate(false);
+            }
+        }.runTaskTimer(plugin, 200L, 20L);
+    }
+
+    // Called on emergency activation: the emergency is the signal, so step down now
+    // whatever the current p95, still respecting the dwell time
+    void onEmergency() {
+        if (enabled) {
+            evaluate(true);
+        }
+    }
+
+    List<String> getRecentChanges() {
+        return new ArrayList<>(recentChanges);
+    }
+
+    private void evaluate(boolean emergency) {
+        Settings settings = plugin.getSettings();
+        int maxView = settings.maxViewDistance;
+        int minView = settings.minViewDistance;
+        int minSimulation = settings.minSimulationDistance;
+        double downMspt = settings.viewStepDownMspt;
+        double upMspt = settings.viewStepUpMspt;
+        long dwell = settings.viewDwellMillis;
+        double p95 = plugin.getPerformanceMonitor().getTickSampler().getWindowPercentileMillis(95);
+        long now = System.currentTimeMillis();
+
+        boolean down = emergency || p95 > downMspt;
+        boolean up = !down && p95 < upMspt;
+        if (!down && !up) return;
+
+        World target = null;
+        WorldState targetState = null;
+        for (World world : plugin.getServer().getWorlds()) {
+            WorldState state = stateOf(world, maxView);
+            if (now - state.lastChange < dwell) continue;
+            if (down ? state.view <= minView : state.view >= maxView) continue;
+            // Shed the widest world first, restore the narrowest first
+            if (targetState == null || (down ? state.view > targetState.view : state.view < targetState.view)) {
+                target = world;
+                targetState = state;
+            }
+        }
+        if (target == null) return;
+
+        int oldView = targetState.view;
+        int oldSimulation = targetState.simulation;
+        targetState.view = oldView + (down ? -1 : 1);
+        targetState.simulation = Math.max(minSimulation, Math.min(targetState.view, targetState.simulation + (down ? -1 : 1)));
+        targetState.lastChange = now;
+        target.setViewDistance(targetState.view);
+        target.setSimulationDistance(targetState.simulation);
+
+        String change = String.format("%s: view %d -> %d, simulation %d -> %d (p95 %.1fms%s)",
+            target.getName(), oldView, targetState.view, oldSimulation, targetState.simulation,
+            p95, emergency ? ", emergency" : "");
+        plugin.getLogger().info("Distance step " + change);
+        plugin.getActionCounters().increment(ActionCounters.Action.VIEW_DISTANCE_STEPS);
+        if (down) {
+            plugin.getActionFeedback().record(ActionFeedback.Action.VIEW_DISTANCE);
+        }
+        recentChanges.addFirst(change);
+        while (recentChanges.size() > RECENT_CHANGES) {
+            recentChanges.pollLast();
+        }
+    }
+
+    private WorldState stateOf(World world, int maxView) {
+        WorldState state = states.get(world.getUID());
+        if (state == null) {
+            state = new WorldState();
+            state.view = Math.min(world.getViewDistance(), maxView);
+            state.simulation = Math.min(world.getSimulationDistance(), state.view);
+            states.put(world.getUID(), state);
+        }
+        return state;
+    }
+}
@@ -1,5 +1,7 @@
 package com.kebapci42.opticore.lite;
 
+import com.kebapci42.opticore.CullingEngine;
+import com.kebapci42.opticore.ItemSpatialIndex;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.scheduler.BukkitRunnable;
 import org.bukkit.entity.Entity;
@@ -14,23 +16,35 @@ import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.ChatColor;
+import org.bukkit.inventory.ItemStack;
 
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
 import java.util.List;
 
 public class OptiCoreLite extends JavaPlugin implements Listener {
     
     private FileConfiguration config;
+    private boolean mergeItems;
     private int optimizedItems = 0;
     private int emergencyActivations = 0;
     private long lastEmergencyTime = 0;
-    private long lastGcTime = 0;
+    private final ItemSpatialIndex itemIndex = new ItemSpatialIndex();
+    private CullingEngine cullingEngine;
     
     @Override
     public void onEnable() {
         saveDefaultConfig();
         config = getConfig();
+        // Read once; the item spawn handler is too hot for path lookups
+        mergeItems = config.getBoolean("merge-items", true);
         
         getServer().getPluginManager().registerEvents(this, this);
+        itemIndex.register(this);
+        cullingEngine = new CullingEngine(this, itemIndex, config.getLong("entity-culling.budget-nanos", 2000000L));
         
         // Much gentler optimization - every 2 minutes
         new BukkitRunnable() {
@@ -45,7 +59,7 @@ public class OptiCoreLite extends JavaPlugin implements Listener {
     
     @EventHandler
     public void onItemSpawn(ItemSpawnEvent event) {
-        if (config.getBoolean("merge-items", true)) {
+        if (mergeItems) {
             if (mergeNearbyItems(event.getEntity())) {
                 optimizedItems++;
             }
@@ -108,15 +122,14 @@ public class OptiCoreLite extends JavaPlugin implements Listener {
                     return true;
                 }
                 
-                long now = System.currentTimeMillis();
-                if (now - lastGcTime > 30000) { // 30 second cooldown
-                    sender.sendMessage(ChatColor.YELLOW + "Running garbage collection...");
-                    System.gc();
-                    lastGcTime = now;
-                    sender.sendMessage(ChatColor.GREEN + "Garbage collection completed!");
-                } else {
-                    sender.sendMessage(ChatColor.RED + "Please wait before running GC again!");
+                // Forcing a full collection stalls the server; report what the collectors did instead
+                sender.sendMessage(ChatColor.AQUA + "======== Garbage Collection ========");
+                for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                    sender.sendMessage(ChatColor.WHITE + gc.getName() + ": " + ChatColor.YELLOW + gc.getCollectionCount()
+                        + ChatColor.GRAY + " collections, " + gc.getCollectionTime() + "ms total");
                 }
+                sender.sendMessage(ChatColor.WHITE + "Old gen after GC: " + ChatColor.YELLOW
+                    + String.format("%.1f%%", getOldGenOccupancy() * 100));
                 return true;
             }
         }
@@ -128,6 +141,7 @@ public class OptiCoreLite extends JavaPlugin implements Listener {
         sender.sendMessage(ChatColor.WHITE + "Items Optimized: " + ChatColor.GREEN + optimizedItems);
         sender.sendMessage(ChatColor.WHITE + "Emergency Activations: " + ChatColor.YELLOW + emergencyActivations);
         sender.sendMessage(ChatColor.WHITE + "Total Entities: " + ChatColor.BLUE + getTotalEntities());
+        sender.sendMessage(ChatColor.WHITE + "Item Sweep: " + ChatColor.YELLOW + cullingEngine.describeProgress());
         
         Runtime runtime = Runtime.getRuntime();
         long usedMemory = (runtime.totalMemory() - runtime.freeMemory()) / 1048576;
@@ -180,20 +194,14 @@ public class OptiCoreLite extends JavaPlugin implements Listener {
         if (item == null || !item.isValid()) return false;
         
         try {
-            List<Entity> nearby = item.getNearbyEntities(2.0, 2.0, 2.0);
-            for (Entity entity : nearby) {
-                if (entity instanceof Item && entity != item) {
-                    Item nearbyItem = (Item) entity;
-                    if (nearbyItem.getItemStack().isSimilar(item.getItemStack())) {
-                        int totalAmount = item.getItemStack().getAmount() + 
-                                        nearbyItem.getItemStack().getAmount();
-                        if (totalAmount <= item.getItemStack().getMaxStackSize()) {
-                            item.getItemStack().setAmount(totalAmount);
-                            nearbyItem.remove();
-                            return true;
-                        }
-                    }
-                }
+            Item nearbyItem = itemIndex.findMergeCandidate(item, 2.0);
+            if (nearbyItem != null) {
+                ItemStack stack = item.getItemStack();
+                stack.setAmount(stack.getAmount() + nearbyItem.getItemStack().getAmount());
+                item.setItemStack(stack);
+                itemIndex.remove(nearbyItem);
+                nearbyItem.remove();
+                return true;
             }
         } catch (Exception e) {
             // Silently handle any errors
@@ -202,49 +210,41 @@ public class OptiCoreLite extends JavaPlugin implements Listener {
     }
     
     private void optimizeEntities() {
-        int removed = 0;
-        int itemCount = 0;
+        // Only remove very old items (10 minutes); the sweep is spread over as many
+        // ticks as the budget requires and logs its own result
+        cullingEngine.submit(new CullingEngine.Rule("lite", 12000, 0, -1));
         
-        for (World world : getServer().getWorlds()) {
-            List<Entity> entities = world.getEntities();
-            for (Entity entity : entities) {
-                if (entity instanceof Item) {
-                    itemCount++;
-                    Item item = (Item) entity;
-                    // Only remove very old items (10 minutes)
-                    if (item.getTicksLived() > 12000) {
-                        item.remove();
-                        removed++;
-                    }
-                }
-            }
-        }
-        
-        if (removed > 0) {
-            getLogger().info("Gentle optimization: removed " + removed + " very old items (" + itemCount + " total items on server)");
-        }
-        
-        // Very gentle memory check - only if memory is critically high
-        Runtime runtime = Runtime.getRuntime();
-        double memoryUsage = (double)(runtime.totalMemory() - runtime.freeMemory()) / runtime.maxMemory();
+        // Very gentle memory check - only if the heap is still critically full after GC
+        double memoryUsage = getOldGenOccupancy();
         
         if (memoryUsage > 0.9) { // Only if above 90%
             long now = System.currentTimeMillis();
             if (now - lastEmergencyTime > 60000) { // 1 minute cooldown
-                getLogger().warning("Critical memory usage detected: " + String.format("%.1f", memoryUsage * 100) + "%");
+                getLogger().warning("Critical memory usage after GC: " + String.format("%.1f", memoryUsage * 100) + "%");
                 emergencyActivations++;
                 lastEmergencyTime = now;
                 
-                // Only GC if we haven't done it recently
-                if (now - lastGcTime > 30000) {
-                    System.gc();
-                    lastGcTime = now;
-                    getLogger().info("Emergency garbage collection completed");
-                }
+                // Shed dropped items (2 minutes old) rather than forcing a collection
+                cullingEngine.submit(new CullingEngine.Rule("lite-memory", 2400, 0, -1));
             }
         }
     }
     
+    // Highest old-generation occupancy left by the most recent collection, 0 before the first
+    private static double getOldGenOccupancy() {
+        double occupancy = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != MemoryType.HEAP || !pool.isCollectionUsageThresholdSupported()) continue;
+            if (pool.getName().contains("Eden") || pool.getName().contains("Survivor")) continue;
+            MemoryUsage afterGc = pool.getCollectionUsage();
+            long max = afterGc == null ? -1 : afterGc.getMax() > 0 ? afterGc.getMax() : afterGc.getCommitted();
+            if (max > 0) {
+                occupancy = Math.max(occupancy, (double) afterGc.getUsed() / max);
+            }
+        }
+        return occupancy;
+    }
+    
     private int forceOptimization() {
         int removed = 0;
         
@@ -263,13 +263,6 @@ public class OptiCoreLite extends JavaPlugin implements Listener {
             }
         }
         
-        // Only GC if we haven't recently
-        long now = System.currentTimeMillis();
-        if (now - lastGcTime > 30000) {
-            System.gc();
-            lastGcTime = now;
-        }
-        
         return removed;
     }
 }
@@ -0,0 +1,29 @@
+package com.kebapci42.opticore.util;
+
+// Packs chunk coordinates into a single long so chunk-keyed state can live in
+// primitive maps instead of holding on to Chunk objects.
+public final class ChunkKey {
+
+    private ChunkKey() {
+    }
+
+    public static long pack(int chunkX, int chunkZ) {
+        return ((long) chunkZ << 32) | (chunkX & 0xFFFFFFFFL);
+    }
+
+    public static long ofBlock(int blockX, int blockZ) {
+        return pack(blockX >> 4, blockZ >> 4);
+    }
+
+    public static long ofPosition(double x, double z) {
+        return ofBlock((int) Math.floor(x), (int) Math.floor(z));
+    }
+
+    public static int x(long key) {
+        return (int) key;
+    }
+
+    public static int z(long key) {
+        return (int) (key >>> 32);
+    }
+}
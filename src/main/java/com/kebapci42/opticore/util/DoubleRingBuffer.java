@@ -0,0 +1,168 @@
+package com.kebapci42.opticore.util;
+
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+// Fixed-capacity ring of double samples with one writer and any number of readers.
+//
+// The writer keeps a running sum for each configured window, so averages are O(1);
+// min, max and percentiles scan at most one window of the primitive array. Nothing
+// allocates per sample. Readers never block the writer: they read under a sequence
+// counter and retry if a write landed in the middle of their read.
+public final class DoubleRingBuffer {
+    private final double[] samples;
+    private final int[] windows;
+    private final double[] windowSums;
+    private long written;
+    private volatile long sequence;
+
+    // Window sizes are in samples; the largest window must fit in the buffer
+    public DoubleRingBuffer(int capacity, int... windows) {
+        for (int window : windows) {
+            if (window <= 0 || window > capacity) {
+                throw new IllegalArgumentException("window " + window + " does not fit capacity " + capacity);
+            }
+        }
+        this.samples = new double[capacity];
+        this.windows = windows.clone();
+        this.windowSums = new double[windows.length];
+    }
+
+    public int capacity() {
+        return samples.length;
+    }
+
+    public int windowCount() {
+        return windows.length;
+    }
+
+    public int windowSize(int window) {
+        return windows[window];
+    }
+
+    // Single writer only
+    public void add(double value) {
+        long seq = sequence;
+        sequence = seq + 1;
+        VarHandle.storeStoreFence();
+
+        int capacity = samples.length;
+        int slot = (int) (written % capacity);
+        for (int w = 0; w < windows.length; w++) {
+            int window = windows[w];
+            if (written >= window) {
+                windowSums[w] -= samples[(int) ((written - window) % capacity)];
+            }
+            windowSums[w] += value;
+        }
+        samples[slot] = value;
+        written++;
+        if (written % capacity == 0) {
+            resum();
+        }
+
+        VarHandle.storeStoreFence();
+        sequence = seq + 2;
+    }
+
+    public long count() {
+        while (true) {
+            long seq = sequence;
+            long result = written;
+            VarHandle.loadLoadFence();
+            if ((seq & 1) == 0 && seq == sequence) return result;
+            Thread.onSpinWait();
+        }
+    }
+
+    public double latest(double fallback) {
+        while (true) {
+            long seq = sequence;
+            long end = written;
+            double result = end == 0 ? fallback : samples[(int) ((end - 1) % samples.length)];
+            VarHandle.loadLoadFence();
+            if ((seq & 1) == 0 && seq == sequence) return result;
+            Thread.onSpinWait();
+        }
+    }
+
+    // Average of the most recent samples in the given window, or fallback if empty
+    public double average(int window, double fallback) {
+        while (true) {
+            long seq = sequence;
+            long n = Math.min(written, windows[window]);
+            double result = n == 0 ? fallback : windowSums[window] / n;
+            VarHandle.loadLoadFence();
+            if ((seq & 1) == 0 && seq == sequence) return result;
+            Thread.onSpinWait();
+        }
+    }
+
+    public double min(int window, double fallback) {
+        return extreme(window, fallback, true);
+    }
+
+    public double max(int window, double fallback) {
+        return extreme(window, fallback, false);
+    }
+
+    // Percentile (0-100) of the window. The caller supplies a scratch array of at
+    // least windowSize(window) elements so that repeated reads do not allocate.
+    public double percentile(int window, double percentile, double[] scratch, double fallback) {
+        int n;
+        while (true) {
+            long seq = sequence;
+            n = (int) copyWindow(window, scratch);
+            VarHandle.loadLoadFence();
+            if ((seq & 1) == 0 && seq == sequence) break;
+            Thread.onSpinWait();
+        }
+        if (n == 0) return fallback;
+        Arrays.sort(scratch, 0, n);
+        int rank = (int) Math.ceil(percentile / 100.0 * n) - 1;
+        return scratch[Math.max(0, Math.min(n - 1, rank))];
+    }
+
+    private double extreme(int window, double fallback, boolean min) {
+        while (true) {
+            long seq = sequence;
+            long end = written;
+            long n = Math.min(end, windows[window]);
+            double result = fallback;
+            if (n > 0) {
+                int capacity = samples.length;
+                result = min ? Double.POSITIVE_INFINITY : Double.NEGATIVE_INFINITY;
+                for (long i = end - n; i < end; i++) {
+                    double value = samples[(int) (i % capacity)];
+                    result = min ? Math.min(result, value) : Math.max(result, value);
+                }
+            }
+            VarHandle.loadLoadFence();
+            if ((seq & 1) == 0 && seq == sequence) return result;
+            Thread.onSpinWait();
+        }
+    }
+
+    private long copyWindow(int window, double[] target) {
+        long end = written;
+        long n = Math.min(end, windows[window]);
+        int capacity = samples.length;
+        int out = 0;
+        for (long i = end - n; i < end; i++) {
+            target[out++] = samples[(int) (i % capacity)];
+        }
+        return n;
+    }
+
+    // Running sums pick up floating-point drift; recompute them exactly once per lap
+    private void resum() {
+        int capacity = samples.length;
+        for (int w = 0; w < windows.length; w++) {
+            double sum = 0;
+            for (long i = written - windows[w]; i < written; i++) {
+                sum += samples[(int) (i % capacity)];
+            }
+            windowSums[w] = sum;
+        }
+    }
+}
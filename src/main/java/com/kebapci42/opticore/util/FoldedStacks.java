@@ -0,0 +1,201 @@
+package com.kebapci42.opticore.util;
+
+// Aggregates sampled stack traces into counts per distinct stack, the "folded" form
+// flame graph tools read (frames root first, separated by ';', then the count).
+//
+// Frames are interned by class and method (line numbers would split one method into
+// many boxes) into a fixed-size table, stacks into a second table of frame id runs.
+// All tables are allocated up front: recording a sample that repeats a known stack
+// hashes the frames and bumps a counter, with no allocation. Once either table is
+// full, samples with unseen frames or stacks are counted as dropped rather than
+// growing. Stacks deeper than maxDepth keep their innermost frames under a
+// "[truncated]" root. Not thread-safe.
+public final class FoldedStacks {
+    private static final int TRUNCATED = 0;
+
+    private final int maxFrames;
+    private final int maxStacks;
+    private final int maxDepth;
+
+    // Frame table: id -> class and method, open-addressed slots hold id + 1
+    private final String[] frameClass;
+    private final String[] frameMethod;
+    private final int[] frameSlots;
+    private int frames;
+
+    // Stack table: id -> run of frame ids in the pool (leaf first) and its count
+    private final int[] stackOffset;
+    private final int[] stackLength;
+    private final long[] stackCount;
+    private final int[] stackSlots;
+    private final int[] pool;
+    private int poolUsed;
+    private int stacks;
+
+    private final int[] scratch;
+    private long samples;
+    private long dropped;
+
+    public FoldedStacks(int maxFrames, int maxStacks, int maxDepth) {
+        this.maxFrames = maxFrames;
+        this.maxStacks = maxStacks;
+        this.maxDepth = maxDepth;
+        frameClass = new String[maxFrames];
+        frameMethod = new String[maxFrames];
+        frameSlots = new int[tableSize(maxFrames)];
+        stackOffset = new int[maxStacks];
+        stackLength = new int[maxStacks];
+        stackCount = new long[maxStacks];
+        stackSlots = new int[tableSize(maxStacks)];
+        // Room for the average stack to be a third of the maximum depth
+        pool = new int[maxStacks * Math.max(1, maxDepth / 3)];
+        scratch = new int[maxDepth];
+        frameClass[TRUNCATED] = "[truncated]";
+        frameMethod[TRUNCATED] = null;
+        frames = 1;
+    }
+
+    private static int tableSize(int entries) {
+        return Integer.highestOneBit(Math.max(2, entries) * 2 - 1) << 1;
+    }
+
+    // Innermost frame first, as Thread.getStackTrace returns it; false if dropped
+    public boolean record(StackTraceElement[] stack) {
+        samples++;
+        if (stack.length == 0) {
+            dropped++;
+            return false;
+        }
+        int depth = Math.min(stack.length, maxDepth);
+        int keep = stack.length > maxDepth ? maxDepth - 1 : depth;
+        for (int i = 0; i < keep; i++) {
+            int id = internFrame(stack[i]);
+            if (id < 0) {
+                dropped++;
+                return false;
+            }
+            scratch[i] = id;
+        }
+        if (keep < depth) {
+            scratch[keep] = TRUNCATED;
+        }
+        int id = internStack(depth);
+        if (id < 0) {
+            dropped++;
+            return false;
+        }
+        stackCount[id]++;
+        return true;
+    }
+
+    private int internFrame(StackTraceElement frame) {
+        String className = frame.getClassName();
+        String methodName = frame.getMethodName();
+        int mask = frameSlots.length - 1;
+        int slot = mix(className.hashCode() * 31 + methodName.hashCode()) & mask;
+        while (true) {
+            int entry = frameSlots[slot];
+            if (entry == 0) break;
+            int id = entry - 1;
+            if (className.equals(frameClass[id]) && methodName.equals(frameMethod[id])) return id;
+            slot = (slot + 1) & mask;
+        }
+        if (frames == maxFrames) return -1;
+        int id = frames++;
+        frameClass[id] = className;
+        frameMethod[id] = methodName;
+        frameSlots[slot] = id + 1;
+        return id;
+    }
+
+    private int internStack(int depth) {
+        int hash = depth;
+        for (int i = 0; i < depth; i++) {
+            hash = hash * 31 + scratch[i];
+        }
+        int mask = stackSlots.length - 1;
+        int slot = mix(hash) & mask;
+        while (true) {
+            int entry = stackSlots[slot];
+            if (entry == 0) break;
+            int id = entry - 1;
+            if (sameStack(id, depth)) return id;
+            slot = (slot + 1) & mask;
+        }
+        if (stacks == maxStacks || poolUsed + depth > pool.length) return -1;
+        int id = stacks++;
+        System.arraycopy(scratch, 0, pool, poolUsed, depth);
+        stackOffset[id] = poolUsed;
+        stackLength[id] = depth;
+        poolUsed += depth;
+        stackSlots[slot] = id + 1;
+        return id;
+    }
+
+    private boolean sameStack(int id, int depth) {
+        if (stackLength[id] != depth) return false;
+        int offset = stackOffset[id];
+        for (int i = 0; i < depth; i++) {
+            if (pool[offset + i] != scratch[i]) return false;
+        }
+        return true;
+    }
+
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    public long getSamples() {
+        return samples;
+    }
+
+    public long getDropped() {
+        return dropped;
+    }
+
+    public int getFrameCount() {
+        return frames;
+    }
+
+    public int getStackCount() {
+        return stacks;
+    }
+
+    public String getFrameLabel(int id) {
+        return frameMethod[id] == null ? frameClass[id] : frameClass[id] + "." + frameMethod[id];
+    }
+
+    // Samples per frame id with the frame innermost (self) or anywhere on the stack
+    // (total; recursive frames count once per sample)
+    public long[] frameCounts(boolean self) {
+        long[] counts = new long[frames];
+        int[] seenIn = new int[frames];
+        for (int id = 0; id < stacks; id++) {
+            int offset = stackOffset[id];
+            if (self) {
+                counts[pool[offset]] += stackCount[id];
+                continue;
+            }
+            for (int i = 0; i < stackLength[id]; i++) {
+                int frame = pool[offset + i];
+                if (seenIn[frame] == id + 1) continue;
+                seenIn[frame] = id + 1;
+                counts[frame] += stackCount[id];
+            }
+        }
+        return counts;
+    }
+
+    // One "root;...;leaf count" line per distinct stack
+    public void appendFolded(StringBuilder out) {
+        for (int id = 0; id < stacks; id++) {
+            int offset = stackOffset[id];
+            for (int i = stackLength[id] - 1; i >= 0; i--) {
+                out.append(getFrameLabel(pool[offset + i]));
+                out.append(i == 0 ? ' ' : ';');
+            }
+            out.append(stackCount[id]).append('\n');
+        }
+    }
+}
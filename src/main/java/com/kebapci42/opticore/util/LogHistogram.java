@@ -0,0 +1,130 @@
+package com.kebapci42.opticore.util;
+
+// Log-bucketed histogram of non-negative long values in the style of HdrHistogram:
+// values below 2^precisionBits are counted exactly, larger values land in buckets
+// whose width grows with the magnitude, keeping relative error under
+// 1 / 2^precisionBits. Recording is a couple of bit operations and an array
+// increment, with no allocation. Not thread-safe; publish copies to readers.
+public final class LogHistogram {
+    private final int precisionBits;
+    private final int subBuckets;
+    private final long highestTrackable;
+    private final long[] counts;
+    private long totalCount;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    public LogHistogram(long highestTrackable, int precisionBits) {
+        if (precisionBits < 1 || precisionBits > 10) {
+            throw new IllegalArgumentException("precisionBits must be between 1 and 10");
+        }
+        this.precisionBits = precisionBits;
+        this.subBuckets = 1 << precisionBits;
+        this.highestTrackable = Math.max(highestTrackable, subBuckets);
+        this.counts = new long[indexOf(this.highestTrackable) + 1];
+    }
+
+    private LogHistogram(LogHistogram source) {
+        this.precisionBits = source.precisionBits;
+        this.subBuckets = source.subBuckets;
+        this.highestTrackable = source.highestTrackable;
+        this.counts = source.counts.clone();
+        this.totalCount = source.totalCount;
+        this.sum = source.sum;
+        this.min = source.min;
+        this.max = source.max;
+    }
+
+    public void record(long value) {
+        if (value < 0) value = 0;
+        long clamped = Math.min(value, highestTrackable);
+        counts[indexOf(clamped)]++;
+        totalCount++;
+        sum += value;
+        if (value < min) min = value;
+        if (value > max) max = value;
+    }
+
+    public void add(LogHistogram other) {
+        if (other.counts.length != counts.length || other.precisionBits != precisionBits) {
+            throw new IllegalArgumentException("histogram layouts differ");
+        }
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    public void reset() {
+        java.util.Arrays.fill(counts, 0);
+        totalCount = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    public LogHistogram copy() {
+        return new LogHistogram(this);
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public long getMin() {
+        return totalCount == 0 ? 0 : min;
+    }
+
+    public double getMean() {
+        return totalCount == 0 ? 0 : (double) sum / totalCount;
+    }
+
+    // Value at the given percentile (0-100), reported as the midpoint of its bucket
+    // and never above the largest value actually recorded
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                long lower = lowerBound(i);
+                long upper = lowerBound(i + 1) - 1;
+                return Math.min(max, lower + (upper - lower) / 2);
+            }
+        }
+        return max;
+    }
+
+    // Number of buckets and the count/lower bound of each, for exporters
+    public int bucketCount() {
+        return counts.length;
+    }
+
+    public long countAt(int bucket) {
+        return counts[bucket];
+    }
+
+    public long lowerBound(int bucket) {
+        if (bucket < subBuckets) return bucket;
+        int group = bucket / subBuckets - 1;
+        long mantissa = subBuckets + (bucket % subBuckets);
+        return mantissa << group;
+    }
+
+    private int indexOf(long value) {
+        if (value < subBuckets) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int group = exponent - precisionBits;
+        long mantissa = value >>> group;
+        return (group + 1) * subBuckets + (int) (mantissa - subBuckets);
+    }
+}